@@ -2,11 +2,48 @@ package features;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import rts.GameState;
 
 public abstract class FeatureExtractor {
 
+    /**
+     * Creates the feature extractor named by 'rl.feature.extractor':
+     * 'quadrant_model' ({@link QuadrantModelFeatureExtractor}, parameterized by
+     * 'rl.feature.extractor.quadrant_division'), 'multi_resolution'
+     * ({@link MultiResolutionFeatureExtractor}, with the comma-separated divisions
+     * in 'rl.feature.extractor.divisions') or 'hashed'
+     * ({@link HashedFeatureExtractor}, parameterized by
+     * 'rl.feature.extractor.hashed.size' and
+     * 'rl.feature.extractor.hashed.region_size')
+     * 
+     * @param config
+     * @return
+     */
+    public static FeatureExtractor fromConfig(Properties config) {
+        String name = config.getProperty("rl.feature.extractor", "quadrant_model").trim();
+
+        switch (name) {
+            case "quadrant_model":
+                return new QuadrantModelFeatureExtractor(
+                        Integer.parseInt(config.getProperty("rl.feature.extractor.quadrant_division", "3")));
+            case "multi_resolution":
+                String[] values = config.getProperty("rl.feature.extractor.divisions", "2,3,4").split(",");
+                int[] divisions = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    divisions[i] = Integer.parseInt(values[i].trim());
+                }
+                return new MultiResolutionFeatureExtractor(divisions);
+            case "hashed":
+                return new HashedFeatureExtractor(
+                        Integer.parseInt(config.getProperty("rl.feature.extractor.hashed.size", "1024")),
+                        Integer.parseInt(config.getProperty("rl.feature.extractor.hashed.region_size", "4")));
+            default:
+                throw new RuntimeException("Invalid feature extractor: " + name);
+        }
+    }
+
     /**
      * Returns the features (without normalizing) associated with a
      * {@link GameState} from the point of view of a player (0 or 1)
@@ -45,4 +82,26 @@ public abstract class FeatureExtractor {
         return features;
     }
 
+    /**
+     * Returns the normalized features (as in {@link #getFeatures(GameState, int)})
+     * in sparse form, indexed by their position in
+     * {@link #getFeatureNames(GameState)}. Zero-valued features are omitted.
+     * 
+     * Extractors should override this to avoid building the feature map.
+     * 
+     * @param state
+     * @param player
+     * @return
+     */
+    public SparseFeatures getSparseFeatures(GameState state, int player) {
+        List<String> names = getFeatureNames(state);
+        Map<String, Feature> features = getFeatures(state, player);
+
+        SparseFeatures sparse = new SparseFeatures();
+        for (int i = 0; i < names.size(); i++) {
+            sparse.add(i, features.get(names.get(i)).getValue());
+        }
+        return sparse;
+    }
+
 }
@@ -11,6 +11,7 @@ public class FeatureNames {
     public static final String RESOURCES_OPP = "resources_opp";
     public static final String GAME_TIME = "game_time";
     public static final String BIAS = "bias"; // the 'independent term' whose value is always 1
+    public static final String HASHED = "hashed"; // to be concatenated with the bucket index
 
     /**
      * Returns the feature name for unit count, given the quadrant, unit owner and
@@ -40,4 +41,44 @@ public class FeatureNames {
         return String.format(AVG_HEALTH + "-%d-%d-%d", xQuad, yQuad, player);
     }
 
+    /**
+     * Returns the feature name for unit count in a quadrant of the map divided in
+     * division x division quadrants
+     * 
+     * @param division
+     * @param xQuad
+     * @param yQuad
+     * @param owner
+     * @param type
+     * @return
+     */
+    public static String unitsOfTypePerQuad(int division, int xQuad, int yQuad, int owner, UnitType type) {
+        // feature name: unit_quad-divxdiv-x-y-owner-type
+        return String.format(UNIT_COUNT + "-%dx%d-%d-%d-%d-%s", division, division, xQuad, yQuad, owner, type.name);
+    }
+
+    /**
+     * Returns the feature name for average unit health in a quadrant of the map
+     * divided in division x division quadrants
+     * 
+     * @param division
+     * @param xQuad
+     * @param yQuad
+     * @param player
+     * @return
+     */
+    public static String avgHealthPerQuad(int division, int xQuad, int yQuad, int player) {
+        return String.format(AVG_HEALTH + "-%dx%d-%d-%d-%d", division, division, xQuad, yQuad, player);
+    }
+
+    /**
+     * Returns the feature name of a bucket of the hashed features
+     * 
+     * @param bucket
+     * @return
+     */
+    public static String hashed(int bucket) {
+        return HASHED + "-" + bucket;
+    }
+
 }
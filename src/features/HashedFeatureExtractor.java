@@ -0,0 +1,246 @@
+package features;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitType;
+
+/**
+ * Extracts local features from a microRTS {@link GameState} and hashes them
+ * into a vector of fixed size, so that the number of weights does not depend
+ * on the map. The features (from the point of view of the player, i.e. owner 0
+ * is the player and owner 1 the opponent) are:
+ * <ul>
+ * <li>bias, resources of each owner and game time;</li>
+ * <li>unit count per region (regionSize x regionSize tiles), owner and type;</li>
+ * <li>per-region pressure: the share of each owner in the damage that the
+ * units in the region can deal;</li>
+ * <li>co-occurrences of (own type, opponent type) in the same region;</li>
+ * <li>count of units per owner, type and distance bucket (log2 of the
+ * Manhattan distance) to the nearest stockpile (base) of the other owner.</li>
+ * </ul>
+ * Colliding features add up and every entry is truncated to [0, 1].
+ *
+ * Each thread extracting features gets its own scratch buffers, so an instance
+ * can be shared among threads.
+ */
+public class HashedFeatureExtractor extends FeatureExtractor {
+
+    // feature kinds, hashed together with their coordinates
+    private static final int BIAS = 0;
+    private static final int RESOURCES = 1;
+    private static final int GAME_TIME = 2;
+    private static final int UNIT_COUNT = 3;
+    private static final int PRESSURE = 4;
+    private static final int CO_OCCURRENCE = 5;
+    private static final int BASE_DISTANCE = 6;
+
+    // count features saturate at this number of units
+    private static final float COUNT_SCALE = 4;
+
+    // the highest distance bucket (distances of 2^7 tiles and beyond)
+    private static final int MAX_DISTANCE_BUCKET = 7;
+
+    private int size;
+    private int regionSize;
+
+    private List<String> featureNames;
+
+    /**
+     * Scratch space of getSparseFeatures: the accumulated value of each bucket
+     * (all zero between calls) and the buckets touched in the current call
+     */
+    private static class Scratch {
+        float[] accumulator;
+        int[] touched;
+        int numTouched;
+
+        Scratch(int size) {
+            accumulator = new float[size];
+            touched = new int[size];
+        }
+
+        /**
+         * Adds value to an entry of the accumulator, remembering which entries
+         * were touched
+         *
+         * @param index
+         * @param value
+         */
+        void add(int index, float value) {
+            if (value == 0) {
+                return;
+            }
+            if (accumulator[index] == 0) {
+                touched[numTouched++] = index;
+            }
+            accumulator[index] += value;
+        }
+    }
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * @param size       the number of features (hash buckets)
+     * @param regionSize the side, in tiles, of the regions
+     */
+    public HashedFeatureExtractor(int size, int regionSize) {
+        if (size <= 0 || regionSize <= 0) {
+            throw new IllegalArgumentException("Invalid size (" + size + ") or region size (" + regionSize + ")");
+        }
+        this.size = size;
+        this.regionSize = regionSize;
+
+        featureNames = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            featureNames.add(FeatureNames.hashed(i));
+        }
+
+        scratch = ThreadLocal.withInitial(() -> new Scratch(size));
+    }
+
+    /**
+     * Returns the hashed feature names, which do not depend on the state
+     */
+    @Override
+    public List<String> getFeatureNames(GameState state) {
+        return new ArrayList<>(featureNames);
+    }
+
+    /**
+     * Returns the hashed features. Their values are already within [0, 1], hence
+     * the min-max scaling of {@link #getFeatures(GameState, int)} keeps them.
+     */
+    @Override
+    public Map<String, Feature> getRawFeatures(GameState state, int player) {
+        SparseFeatures sparse = getSparseFeatures(state, player);
+        float[] dense = new float[size];
+        sparse.toDense(dense, 0, size);
+
+        Map<String, Feature> features = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = featureNames.get(i);
+            features.put(name, new Feature(name, dense[i], 0, 1));
+        }
+        return features;
+    }
+
+    @Override
+    public SparseFeatures getSparseFeatures(GameState state, int player) {
+        PhysicalGameState pgs = state.getPhysicalGameState();
+        int horizRegions = (pgs.getWidth() + regionSize - 1) / regionSize;
+        int regions = horizRegions * ((pgs.getHeight() + regionSize - 1) / regionSize);
+
+        // per (region, owner): damage that can be dealt and bitmask of the unit types present
+        float[] damage = new float[regions * 2];
+        long[] presence = new long[regions * 2];
+
+        List<Unit> ownBases = new ArrayList<>();
+        List<Unit> oppBases = new ArrayList<>();
+
+        Scratch scratch = this.scratch.get();
+        scratch.numTouched = 0;
+
+        scratch.add(index(BIAS, 0, 0, 0, 0), 1);
+        scratch.add(index(RESOURCES, 0, 0, 0, 0), Math.min(state.getPlayer(player).getResources(), 20) / 20f);
+        scratch.add(index(RESOURCES, 1, 0, 0, 0), Math.min(state.getPlayer(1 - player).getResources(), 20) / 20f);
+        scratch.add(index(GAME_TIME, 0, 0, 0, 0), Math.min(state.getTime(), 3000) / 3000f);
+
+        for (Unit u : pgs.getUnits()) {
+            UnitType type = u.getType();
+            if (type.isResource)
+                continue; // ignores resources
+
+            int owner = u.getPlayer() == player ? 0 : 1;
+            int regionX = u.getX() / regionSize;
+            int regionY = u.getY() / regionSize;
+            int slot = (regionY * horizRegions + regionX) * 2 + owner;
+
+            scratch.add(index(UNIT_COUNT, regionX, regionY, owner, type.ID), 1 / COUNT_SCALE);
+
+            if (type.canAttack) {
+                damage[slot] += type.maxDamage;
+            }
+            if (type.ID < Long.SIZE) {
+                presence[slot] |= 1L << type.ID;
+            }
+            if (type.isStockpile) {
+                (owner == 0 ? ownBases : oppBases).add(u);
+            }
+        }
+
+        for (int region = 0; region < regions; region++) {
+            float ownDamage = damage[region * 2];
+            float oppDamage = damage[region * 2 + 1];
+            if (ownDamage + oppDamage > 0) {
+                int regionX = region % horizRegions;
+                int regionY = region / horizRegions;
+                scratch.add(index(PRESSURE, regionX, regionY, 0, 0), ownDamage / (ownDamage + oppDamage));
+                scratch.add(index(PRESSURE, regionX, regionY, 1, 0), oppDamage / (ownDamage + oppDamage));
+            }
+
+            // pairs of (own type, opponent type) sharing this region
+            for (long own = presence[region * 2]; own != 0; own &= own - 1) {
+                for (long opp = presence[region * 2 + 1]; opp != 0; opp &= opp - 1) {
+                    scratch.add(index(CO_OCCURRENCE, Long.numberOfTrailingZeros(own), Long.numberOfTrailingZeros(opp), 0, 0),
+                            1 / COUNT_SCALE);
+                }
+            }
+        }
+
+        if (!ownBases.isEmpty() || !oppBases.isEmpty()) {
+            for (Unit u : pgs.getUnits()) {
+                if (u.getType().isResource || u.getType().isStockpile)
+                    continue;
+
+                int owner = u.getPlayer() == player ? 0 : 1;
+                List<Unit> targets = owner == 0 ? oppBases : ownBases;
+                if (targets.isEmpty())
+                    continue;
+
+                int distance = Integer.MAX_VALUE;
+                for (Unit base : targets) {
+                    distance = Math.min(distance, Math.abs(base.getX() - u.getX()) + Math.abs(base.getY() - u.getY()));
+                }
+                int bucket = Math.min(31 - Integer.numberOfLeadingZeros(distance + 1), MAX_DISTANCE_BUCKET);
+                scratch.add(index(BASE_DISTANCE, owner, u.getType().ID, bucket, 0), 1 / COUNT_SCALE);
+            }
+        }
+
+        // emits the touched entries (truncated to 1) and clears the accumulator
+        SparseFeatures features = new SparseFeatures(scratch.numTouched);
+        for (int i = 0; i < scratch.numTouched; i++) {
+            int index = scratch.touched[i];
+            features.add(index, Math.min(scratch.accumulator[index], 1));
+            scratch.accumulator[index] = 0;
+        }
+        return features;
+    }
+
+    /**
+     * Returns the bucket of a feature given its kind and coordinates
+     *
+     * @return
+     */
+    private int index(int kind, int a, int b, int c, int d) {
+        int h = kind;
+        h = 31 * h + a;
+        h = 31 * h + b;
+        h = 31 * h + c;
+        h = 31 * h + d;
+
+        // murmur3 finalizer, to spread the (small) coordinates over the buckets
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % size;
+    }
+
+}
@@ -0,0 +1,276 @@
+package features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Extracts the features of the quadrant model (see
+ * {@link QuadrantModelFeatureExtractor}) at several divisions of the map at
+ * once (e.g. 2x2, 3x3 and 4x4 quadrants), so that the learner sees both coarse
+ * and fine material advantage.
+ *
+ * Each frame, the units are placed once in summed-area tables (one per player
+ * and unit type, plus one with the sum of HP ratios per player), from which the
+ * count and HP sum of any quadrant are read in constant time.
+ *
+ * Divisions must not exceed the width or height of the map. With a single
+ * division, the features are those of {@link QuadrantModelFeatureExtractor}
+ * with that number of quadrants (under other names).
+ *
+ * An instance must not be shared among threads.
+ */
+public class MultiResolutionFeatureExtractor extends FeatureExtractor {
+
+    private int[] divisions;
+
+    // BEGIN -- cached for the current map size and unit type table
+    private UnitTypeTable cachedTypes;
+    private int width;
+    private int height;
+    private int[] typeSlots;
+    private int numTypes;
+    private List<String> featureNames;
+    private float[] maxValues;
+    // summed-area tables, indexed [(player * numTypes + type) * (height+1) * (width+1) + y * (width+1) + x]
+    private int[] countTable;
+    // indexed [player * (height+1) * (width+1) + y * (width+1) + x]
+    private float[] hpTable;
+    // END -- cached for the current map size and unit type table
+
+    /**
+     * @param divisions the map is divided in d x d quadrants for each d in
+     *                  divisions
+     */
+    public MultiResolutionFeatureExtractor(int[] divisions) {
+        if (divisions.length == 0) {
+            throw new IllegalArgumentException("No divisions given");
+        }
+        for (int division : divisions) {
+            if (division <= 0) {
+                throw new IllegalArgumentException("Invalid division: " + division);
+            }
+        }
+        this.divisions = divisions.clone();
+    }
+
+    /**
+     * Rebuilds the cached feature names, bounds and tables if the map size or
+     * unit type table changed
+     *
+     * @param state
+     * @throws IllegalArgumentException if a division exceeds the width or height
+     *                                  of the map (its quadrants would have no
+     *                                  tiles)
+     */
+    private void prepare(GameState state) {
+        PhysicalGameState pgs = state.getPhysicalGameState();
+        UnitTypeTable types = state.getUnitTypeTable();
+        if (types == cachedTypes && pgs.getWidth() == width && pgs.getHeight() == height) {
+            return;
+        }
+
+        for (int division : divisions) {
+            if (division > pgs.getWidth() || division > pgs.getHeight()) {
+                throw new IllegalArgumentException("Division " + division + " does not fit the " + pgs.getWidth()
+                        + "x" + pgs.getHeight() + " map");
+            }
+        }
+
+        cachedTypes = types;
+        width = pgs.getWidth();
+        height = pgs.getHeight();
+
+        List<UnitType> unitTypes = types.getUnitTypes();
+        typeSlots = new int[unitTypes.size()];
+        numTypes = 0;
+        for (UnitType type : unitTypes) {
+            typeSlots[type.ID] = type.isResource ? -1 : numTypes++;
+        }
+
+        featureNames = new ArrayList<>();
+        List<Float> bounds = new ArrayList<>();
+
+        // the 'global' features
+        featureNames.add(FeatureNames.RESOURCES_OWN);
+        bounds.add(20f);
+        featureNames.add(FeatureNames.RESOURCES_OPP);
+        bounds.add(20f);
+        featureNames.add(FeatureNames.GAME_TIME);
+        bounds.add(3000f);
+        featureNames.add(FeatureNames.BIAS);
+        bounds.add(1f);
+
+        // the 'per-quadrant' features of each division
+        for (int division : divisions) {
+            float tilesPerQuadrant = (width / division) * (height / division);
+
+            for (int horizQuad = 0; horizQuad < division; horizQuad++) {
+                for (int vertQuad = 0; vertQuad < division; vertQuad++) {
+                    for (int player = 0; player < 2; player++) {
+                        featureNames.add(FeatureNames.avgHealthPerQuad(division, horizQuad, vertQuad, player));
+                        bounds.add(1f);
+
+                        for (UnitType type : unitTypes) {
+                            if (type.isResource)
+                                continue; // ignores resources
+                            featureNames.add(FeatureNames.unitsOfTypePerQuad(division, horizQuad, vertQuad, player, type));
+                            bounds.add(tilesPerQuadrant);
+                        }
+                    }
+                }
+            }
+        }
+
+        maxValues = new float[bounds.size()];
+        for (int i = 0; i < maxValues.length; i++) {
+            maxValues[i] = bounds.get(i);
+        }
+
+        int tableSize = (width + 1) * (height + 1);
+        countTable = new int[2 * numTypes * tableSize];
+        hpTable = new float[2 * tableSize];
+    }
+
+    @Override
+    public List<String> getFeatureNames(GameState state) {
+        prepare(state);
+        return new ArrayList<>(featureNames);
+    }
+
+    @Override
+    public Map<String, Feature> getRawFeatures(GameState state, int player) {
+        SparseFeatures sparse = getSparseFeatures(state, player);
+        float[] normalized = new float[featureNames.size()];
+        sparse.toDense(normalized, 0, normalized.length);
+
+        Map<String, Feature> features = new HashMap<>();
+        for (int i = 0; i < normalized.length; i++) {
+            String name = featureNames.get(i);
+            features.put(name, new Feature(name, normalized[i] * maxValues[i], 0, maxValues[i]));
+        }
+        return features;
+    }
+
+    @Override
+    public SparseFeatures getSparseFeatures(GameState state, int player) {
+        prepare(state);
+        buildTables(state);
+
+        SparseFeatures features = new SparseFeatures();
+
+        features.add(0, Math.min(state.getPlayer(player).getResources(), 20) / 20f);
+        features.add(1, Math.min(state.getPlayer(1 - player).getResources(), 20) / 20f);
+        features.add(2, Math.min(state.getTime(), 3000) / 3000f);
+        features.add(3, 1);
+
+        int tableSize = (width + 1) * (height + 1);
+        int index = 4;
+        for (int division : divisions) {
+            int horizQuadLength = width / division;
+            int vertQuadLength = height / division;
+
+            for (int horizQuad = 0; horizQuad < division; horizQuad++) {
+                for (int vertQuad = 0; vertQuad < division; vertQuad++) {
+                    int x1 = horizQuad * horizQuadLength;
+                    int y1 = vertQuad * vertQuadLength;
+                    int x2 = x1 + horizQuadLength;
+                    int y2 = y1 + vertQuadLength;
+
+                    for (int p = 0; p < 2; p++) {
+                        int healthIndex = index;
+                        index += 1 + numTypes;
+
+                        int unitCount = 0;
+                        for (int t = 0; t < numTypes; t++) {
+                            int count = rectangleSum(countTable, (p * numTypes + t) * tableSize, x1, y1, x2, y2);
+                            if (count > 0) {
+                                unitCount += count;
+                                int countIndex = healthIndex + 1 + t;
+                                features.add(countIndex, Math.min(count, maxValues[countIndex]) / maxValues[countIndex]);
+                            }
+                        }
+
+                        if (unitCount > 0) {
+                            float hpSum = rectangleSum(hpTable, p * tableSize, x1, y1, x2, y2);
+                            features.add(healthIndex, Math.max(0, Math.min(hpSum / unitCount, 1)));
+                        }
+                    }
+                }
+            }
+        }
+
+        return features;
+    }
+
+    /**
+     * Fills the summed-area tables with the units of the state: entry (x, y) of a
+     * table holds the sum over the tiles in [0, x) x [0, y)
+     *
+     * @param state
+     */
+    private void buildTables(GameState state) {
+        int rowLength = width + 1;
+        int tableSize = rowLength * (height + 1);
+
+        Arrays.fill(countTable, 0);
+        Arrays.fill(hpTable, 0);
+
+        // places each unit at the entry of its tile (shifted by one row and column)
+        for (Unit u : state.getPhysicalGameState().getUnits()) {
+            int typeSlot = typeSlots[u.getType().ID];
+            if (typeSlot < 0)
+                continue; // ignores resources
+
+            int entry = (u.getY() + 1) * rowLength + u.getX() + 1;
+            countTable[(u.getPlayer() * numTypes + typeSlot) * tableSize + entry]++;
+            hpTable[u.getPlayer() * tableSize + entry] += u.getHitPoints() / (float) u.getType().hp;
+        }
+
+        // accumulates rows and columns
+        for (int table = 0; table < 2 * numTypes; table++) {
+            int base = table * tableSize;
+            for (int y = 1; y <= height; y++) {
+                for (int x = 1; x <= width; x++) {
+                    int entry = base + y * rowLength + x;
+                    countTable[entry] += countTable[entry - 1] + countTable[entry - rowLength]
+                            - countTable[entry - rowLength - 1];
+                }
+            }
+        }
+        for (int table = 0; table < 2; table++) {
+            int base = table * tableSize;
+            for (int y = 1; y <= height; y++) {
+                for (int x = 1; x <= width; x++) {
+                    int entry = base + y * rowLength + x;
+                    hpTable[entry] += hpTable[entry - 1] + hpTable[entry - rowLength] - hpTable[entry - rowLength - 1];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the sum over the tiles in [x1, x2) x [y1, y2) of the table starting
+     * at base
+     */
+    private int rectangleSum(int[] table, int base, int x1, int y1, int x2, int y2) {
+        int rowLength = width + 1;
+        return table[base + y2 * rowLength + x2] - table[base + y1 * rowLength + x2]
+                - table[base + y2 * rowLength + x1] + table[base + y1 * rowLength + x1];
+    }
+
+    private float rectangleSum(float[] table, int base, int x1, int y1, int x2, int y2) {
+        int rowLength = width + 1;
+        return table[base + y2 * rowLength + x2] - table[base + y1 * rowLength + x2]
+                - table[base + y2 * rowLength + x1] + table[base + y1 * rowLength + x1];
+    }
+
+}
@@ -9,6 +9,7 @@ import java.util.Map;
 import rts.GameState;
 import rts.units.Unit;
 import rts.units.UnitType;
+import rts.units.UnitTypeTable;
 
 /**
  * Extract features from a microRTS {@link GameState} using the IJCAI-18 paper
@@ -24,6 +25,14 @@ import rts.units.UnitType;
 public class QuadrantModelFeatureExtractor extends FeatureExtractor {
     int numQuadrants;
 
+    /**
+     * Position of each unit type (by ID) among the non-resource types of
+     * typeSlotsTable (-1 for resources), used to index the sparse features
+     */
+    private int[] typeSlots;
+    private int numTypes;
+    private UnitTypeTable typeSlotsTable;
+
     public QuadrantModelFeatureExtractor(int numQuadrants) {
         this.numQuadrants = numQuadrants;
 
@@ -196,4 +205,71 @@ public class QuadrantModelFeatureExtractor extends FeatureExtractor {
 
     }
 
+    /**
+     * Computes the normalized features in a single pass over the units, without
+     * building the feature map. Indices follow {@link #getFeatureNames(GameState)}:
+     * the four global features, then, per quadrant and player, the average health
+     * followed by the count of each non-resource unit type.
+     */
+    @Override
+    public SparseFeatures getSparseFeatures(GameState state, int player) {
+        UnitTypeTable types = state.getUnitTypeTable();
+        if (types != typeSlotsTable) {
+            List<UnitType> unitTypes = types.getUnitTypes();
+            typeSlots = new int[unitTypes.size()];
+            numTypes = 0;
+            for (UnitType type : unitTypes) {
+                typeSlots[type.ID] = type.isResource ? -1 : numTypes++;
+            }
+            typeSlotsTable = types;
+        }
+
+        int horizQuadLength = state.getPhysicalGameState().getWidth() / numQuadrants;
+        int vertQuadLength = state.getPhysicalGameState().getHeight() / numQuadrants;
+        float tilesPerQuadrant = horizQuadLength * vertQuadLength;
+
+        // per (quadrant, player) slot: unit counts by type, number of units and sum of HP ratios
+        int slots = numQuadrants * numQuadrants * 2;
+        int[] typeCount = new int[slots * numTypes];
+        int[] unitCount = new int[slots];
+        float[] hpSum = new float[slots];
+
+        for (Unit u : state.getPhysicalGameState().getUnits()) {
+            int typeSlot = typeSlots[u.getType().ID];
+            if (typeSlot < 0)
+                continue; // ignores resources
+
+            int horizQuad = u.getX() / horizQuadLength;
+            int vertQuad = u.getY() / vertQuadLength;
+            if (horizQuad >= numQuadrants || vertQuad >= numQuadrants)
+                continue; // the remainder of the map does not belong to any quadrant
+
+            int slot = (horizQuad * numQuadrants + vertQuad) * 2 + u.getPlayer();
+            typeCount[slot * numTypes + typeSlot]++;
+            unitCount[slot]++;
+            hpSum[slot] += u.getHitPoints() / (float) u.getType().hp;
+        }
+
+        SparseFeatures features = new SparseFeatures();
+
+        // global features (same bounds as in initializeFeatures)
+        features.add(0, Math.min(state.getPlayer(player).getResources(), 20) / 20f);
+        features.add(1, Math.min(state.getPlayer(1 - player).getResources(), 20) / 20f);
+        features.add(2, Math.min(state.getTime(), 3000) / 3000f);
+        features.add(3, 1);
+
+        for (int slot = 0; slot < slots; slot++) {
+            if (unitCount[slot] == 0)
+                continue; // all features of this slot are zero
+
+            int base = 4 + slot * (1 + numTypes);
+            features.add(base, Math.min(hpSum[slot] / unitCount[slot], 1));
+            for (int t = 0; t < numTypes; t++) {
+                features.add(base + 1 + t, Math.min(typeCount[slot * numTypes + t], tilesPerQuadrant) / tilesPerQuadrant);
+            }
+        }
+
+        return features;
+    }
+
 }
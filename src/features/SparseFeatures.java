@@ -0,0 +1,130 @@
+package features;
+
+import java.util.Arrays;
+
+/**
+ * A feature vector that only stores its non-zero (active) entries, as
+ * parallel arrays of indices and values. Indices refer to the position of the
+ * feature in {@link FeatureExtractor#getFeatureNames(rts.GameState)}.
+ */
+public class SparseFeatures {
+    private int[] indices;
+    private float[] values;
+    private int size;
+
+    public SparseFeatures() {
+        this(16);
+    }
+
+    public SparseFeatures(int capacity) {
+        indices = new int[Math.max(1, capacity)];
+        values = new float[indices.length];
+        size = 0;
+    }
+
+    /**
+     * Appends an entry. Zero values are not stored.
+     *
+     * @param index
+     * @param value
+     */
+    public void add(int index, float value) {
+        if (value == 0) {
+            return;
+        }
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        indices[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns the number of active entries
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the feature index of the i-th active entry
+     *
+     * @param i
+     * @return
+     */
+    public int index(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Returns the value of the i-th active entry
+     *
+     * @param i
+     * @return
+     */
+    public float value(int i) {
+        return values[i];
+    }
+
+    /**
+     * Returns the dot product of this vector with a dense weight vector
+     *
+     * @param weights
+     * @return
+     */
+    public float dot(float[] weights) {
+        float product = 0.0f;
+        for (int i = 0; i < size; i++) {
+            product += values[i] * weights[indices[i]];
+        }
+        return product;
+    }
+
+    /**
+     * Returns the Euclidean (L2) norm of this vector
+     *
+     * @return
+     */
+    public double norm() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i] * values[i];
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Adds scale times this vector to a dense weight vector
+     *
+     * @param weights
+     * @param scale
+     */
+    public void addTo(float[] weights, double scale) {
+        for (int i = 0; i < size; i++) {
+            weights[indices[i]] += scale * values[i];
+        }
+    }
+
+    /**
+     * Writes this vector into out (starting at offset), which must hold the dense
+     * features. Inactive entries are set to zero.
+     *
+     * @param out
+     * @param offset
+     * @param length the number of features
+     */
+    public void toDense(float[] out, int offset, int length) {
+        Arrays.fill(out, offset, offset + length, 0);
+        for (int i = 0; i < size; i++) {
+            out[offset + indices[i]] = values[i];
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
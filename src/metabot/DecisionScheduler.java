@@ -0,0 +1,269 @@
+package metabot;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import features.SparseFeatures;
+import rl.Sarsa;
+import rts.GameState;
+import rts.units.Unit;
+
+/**
+ * Decides when MetaBot makes a new choice.
+ * 
+ * By default, choices last 'rl.sticky_actions' frames. With
+ * 'rl.decision.adaptive = true', a new choice is made as soon as (but not
+ * before) 'rl.decision.min_interval' frames have passed and either the
+ * normalized features changed by more than 'rl.decision.threshold' (in any
+ * feature) since the last choice, or a unit died, or a building was completed.
+ * Choices never last more than 'rl.decision.max_interval' frames (default:
+ * 'rl.sticky_actions').
+ * 
+ * Choices are scheduled by game time, and {@link #isDue(int)} tells the
+ * runner which frames it must not skip, so skipping idle frames does not
+ * shift them.
+ */
+class DecisionScheduler {
+
+    private boolean adaptive;
+    private int interval;
+    private int minInterval;
+    private int maxInterval;
+    private double threshold;
+
+    private Sarsa learningAgent;
+
+    private int lastChoiceTime;
+    private int elapsed;
+
+    /**
+     * Normalized features at the last choice (adaptive only)
+     */
+    private SparseFeatures lastFeatures;
+
+    /**
+     * Differences between the current and last features, by feature index
+     * (all zero between calls of {@link #featuresChanged(SparseFeatures)})
+     */
+    private float[] differences = new float[0];
+
+    /**
+     * IDs of the non-resource units seen in the previous frame (adaptive only)
+     */
+    private Set<Long> units;
+    private Set<Long> currentUnits;
+
+    /**
+     * Whether a unit died or a building was completed since the last choice
+     */
+    private boolean eventPending;
+
+    public DecisionScheduler(Properties config, int stickyActions, Sarsa learningAgent) {
+        this.learningAgent = learningAgent;
+        interval = Math.max(1, stickyActions);
+
+        adaptive = Boolean.parseBoolean(config.getProperty("rl.decision.adaptive", "false").trim());
+        minInterval = Integer.parseInt(config.getProperty("rl.decision.min_interval", "10").trim());
+        maxInterval = Integer.parseInt(config.getProperty("rl.decision.max_interval", "" + interval).trim());
+        threshold = Double.parseDouble(config.getProperty("rl.decision.threshold", "0.1").trim());
+
+        units = new HashSet<>();
+        currentUnits = new HashSet<>();
+        reset();
+    }
+
+    /**
+     * Prepares for a new game
+     */
+    public void reset() {
+        lastChoiceTime = -1;
+        elapsed = 0;
+        lastFeatures = null;
+        units.clear();
+        eventPending = false;
+    }
+
+    /**
+     * Returns whether a new choice must be made in this frame. If so, the frames
+     * elapsed since the previous choice are available in {@link #getElapsed()}.
+     * Must be called once per frame the AI is queried.
+     * 
+     * @param state
+     * @param player
+     * @return
+     */
+    public boolean isChoiceTime(GameState state, int player) {
+        int time = state.getTime();
+
+        if (adaptive) {
+            eventPending |= trackUnits(state);
+        }
+
+        if (lastChoiceTime < 0) {
+            return choose(time, state, player);
+        }
+
+        int sinceLast = time - lastChoiceTime;
+        if (!adaptive) {
+            return sinceLast >= interval && choose(time, state, player);
+        }
+
+        if (sinceLast >= maxInterval) {
+            return choose(time, state, player);
+        }
+        if (sinceLast < minInterval) {
+            return false;
+        }
+        if (eventPending) {
+            return choose(time, state, player);
+        }
+        if (featuresChanged(learningAgent.getSparseFeatures(state, player))) {
+            return choose(time, state, player);
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a choice may be made at time, i.e., whether
+     * {@link #isChoiceTime(GameState, int)} must be called at that frame. In
+     * adaptive mode, this holds for every frame after the minimum interval
+     * (the changes in the features are only known by looking at them).
+     * 
+     * @param time
+     * @return
+     */
+    public boolean isDue(int time) {
+        if (lastChoiceTime < 0) {
+            return true;
+        }
+        int sinceLast = time - lastChoiceTime;
+        if (!adaptive) {
+            return sinceLast >= interval;
+        }
+        return sinceLast >= Math.min(minInterval, maxInterval);
+    }
+
+    /**
+     * Records a choice at time
+     * 
+     * @return true
+     */
+    private boolean choose(int time, GameState state, int player) {
+        elapsed = lastChoiceTime < 0 ? interval : time - lastChoiceTime;
+        lastChoiceTime = time;
+        eventPending = false;
+        if (adaptive) {
+            lastFeatures = learningAgent.getSparseFeatures(state, player);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of frames between the last two choices
+     * 
+     * @return
+     */
+    public int getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the elapsed time of the last choice in units of the fixed interval
+     * ('rl.sticky_actions'), as used to discount future rewards
+     * 
+     * @return
+     */
+    public double getElapsedIntervals() {
+        return elapsed / (double) interval;
+    }
+
+    /**
+     * Returns whether any feature changed by more than the threshold since the
+     * last choice. Only the active entries of both vectors are visited (inactive
+     * features are zero).
+     * 
+     * @param features
+     * @return
+     */
+    private boolean featuresChanged(SparseFeatures features) {
+        for (int i = 0; i < features.size(); i++) {
+            grow(features.index(i));
+            differences[features.index(i)] += features.value(i);
+        }
+        for (int i = 0; i < lastFeatures.size(); i++) {
+            grow(lastFeatures.index(i));
+            differences[lastFeatures.index(i)] -= lastFeatures.value(i);
+        }
+
+        boolean changed = exceedsThreshold(features) | exceedsThreshold(lastFeatures);
+        for (int i = 0; i < features.size(); i++) {
+            differences[features.index(i)] = 0;
+        }
+        for (int i = 0; i < lastFeatures.size(); i++) {
+            differences[lastFeatures.index(i)] = 0;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns whether the difference of any active feature of features exceeds
+     * the threshold
+     * 
+     * @param features
+     * @return
+     */
+    private boolean exceedsThreshold(SparseFeatures features) {
+        for (int i = 0; i < features.size(); i++) {
+            if (Math.abs(differences[features.index(i)]) > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes room in {@link #differences} for the feature index
+     * 
+     * @param index
+     */
+    private void grow(int index) {
+        if (index >= differences.length) {
+            differences = Arrays.copyOf(differences, Math.max(index + 1, 2 * differences.length));
+        }
+    }
+
+    /**
+     * Updates the known units and returns whether a unit died or a building was
+     * completed since the previous frame
+     * 
+     * @param state
+     * @return
+     */
+    private boolean trackUnits(GameState state) {
+        boolean event = false;
+        boolean first = units.isEmpty();
+
+        currentUnits.clear();
+        for (Unit u : state.getPhysicalGameState().getUnits()) {
+            if (u.getType().isResource)
+                continue;
+            currentUnits.add(u.getID());
+
+            // buildings appear when their construction completes
+            if (!first && !u.getType().canMove && !units.contains(u.getID())) {
+                event = true;
+            }
+        }
+
+        if (!currentUnits.containsAll(units)) {
+            event = true; // some unit died
+        }
+
+        Set<Long> swap = units;
+        units = currentUnits;
+        currentUnits = swap;
+        return event;
+    }
+}
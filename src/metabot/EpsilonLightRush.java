@@ -1,9 +1,7 @@
 package metabot;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import ai.abstraction.HeavyRush;
@@ -14,6 +12,8 @@ import ai.core.AI;
 import ai.core.ParameterSpecification;
 import metabot.portfolio.BuildBarracks;
 import metabot.portfolio.Expand;
+import rl.EpsilonGreedy;
+import rl.ExplorationStrategy;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
@@ -26,39 +26,45 @@ public class EpsilonLightRush extends AI {
 
     // AI portfolio
     private AI lightRush;
-    private Map<String, AI> portfolio;
+    private AI[] portfolio;
 
-    // Epsilon value and decay
+    // Initial epsilon value and (exponential) decay
     private double epsilon = 0.3f;
     private double decayRate = 0.995f;
-    private String decayType = "exponential";
+
+    private ExplorationStrategy explorationStrategy;
 
     public EpsilonLightRush(UnitTypeTable unitTypeTable) {
         this.unitTypeTable = unitTypeTable;
         random = new Random();
+        explorationStrategy = new EpsilonGreedy(epsilon, decayRate, random);
         setupPortifolio();
     }
 
     public EpsilonLightRush(UnitTypeTable unitTypeTable, double epsilon, double decayRate, Random random) {
         this.unitTypeTable = unitTypeTable;
+        this.epsilon = epsilon;
+        this.decayRate = decayRate;
         this.random = random;
+        explorationStrategy = new EpsilonGreedy(epsilon, decayRate, random);
         setupPortifolio();
     }
 
     private void setupPortifolio() {
         lightRush = new LightRush(unitTypeTable);
 
-        portfolio = new HashMap<>();
-        portfolio.put("WorkerRush", new WorkerRush(unitTypeTable));
-        portfolio.put("RangedRush", new RangedRush(unitTypeTable));
-        portfolio.put("HeavyRush", new HeavyRush(unitTypeTable));
-        portfolio.put("Expand", new Expand(unitTypeTable));
-        portfolio.put("BuildBarracks", new BuildBarracks(unitTypeTable));
+        portfolio = new AI[] {
+            new WorkerRush(unitTypeTable),
+            new RangedRush(unitTypeTable),
+            new HeavyRush(unitTypeTable),
+            new Expand(unitTypeTable),
+            new BuildBarracks(unitTypeTable)
+        };
     }
 
     @Override
     public void reset() {
-        for (AI ai : portfolio.values()) {
+        for (AI ai : portfolio) {
             ai.reset();
         }
     }
@@ -66,7 +72,7 @@ public class EpsilonLightRush extends AI {
     @Override
     public void reset(UnitTypeTable unitTypeTable) {
         this.unitTypeTable = unitTypeTable;
-        for (AI ai : portfolio.values()) {
+        for (AI ai : portfolio) {
             ai.reset(unitTypeTable);
         }
     }
@@ -78,11 +84,9 @@ public class EpsilonLightRush extends AI {
     }
 
     private AI selectAI() {
-        if (random.nextFloat() < epsilon) {
+        if (explorationStrategy.explore()) {
             // Select random AI
-            List<String> aiList = new ArrayList<String>(portfolio.keySet());
-            String aiName = aiList.get(random.nextInt(aiList.size()));
-            return portfolio.get(aiName);
+            return portfolio[explorationStrategy.randomAction(portfolio.length)];
         } else {
             // Select LightRush
             return lightRush;
@@ -105,16 +109,8 @@ public class EpsilonLightRush extends AI {
         return getAIAction(ai, player, state);
     }
 
-    private void decay() {
-        if (decayType == "linear") {
-            epsilon -= decayRate;
-        } else if (decayType == "exponential") {
-            epsilon *= decayRate;
-        }
-    }
-
     private void concludeEpisode() {
-        decay();
+        explorationStrategy.concludeEpisode();
     }
 
     @Override
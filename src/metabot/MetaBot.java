@@ -1,5 +1,6 @@
 package metabot;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -16,7 +17,12 @@ import ai.core.AI;
 import ai.core.ParameterSpecification;
 import config.ConfigManager;
 import metabot.portfolio.BuildBarracks;
+import rl.DecisionClock;
 import rl.Sarsa;
+import rl.TrainingCheckpoint;
+import rl.WeightCheckpointer;
+import rl.WeightHistory;
+import rl.WeightSnapshot;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
@@ -30,7 +36,7 @@ import metabot.portfolio.Expand;
 import ai.PassiveAI;
 
 
-public class MetaBot extends AI {
+public class MetaBot extends AI implements DecisionClock {
     UnitTypeTable myUnitTypeTable = null;
 
     Logger logger;
@@ -53,19 +59,31 @@ public class MetaBot extends AI {
      */
     private List<String> choices;
 
-    private List<Map<String, Double>> qValues;
-    private List<Map<String, Float>> features;
-
     /**
      * Stores the player number to retrieve actions and determine match outcome
      */
     int myPlayerNumber;
 
+    /**
+     * Number of frames each choice lasts
+     */
     int stickyActions;
-    int stickyCount = 0;
+
+    /**
+     * Decides when to make a new choice (every stickyActions frames, unless
+     * adaptive)
+     */
+    DecisionScheduler scheduler;
 
     int matchCount = 1;
 
+    // BEGIN -- weight checkpoints (see checkpoint())
+    private int checkpointInterval;
+    private boolean asyncCheckpoints;
+    private int gamesSinceCheckpoint;
+    private WeightHistory weightHistory;
+    // END -- weight checkpoints
+
     // BEGIN -- variables to feed the learning agent
     private GameState previousState;
     private GameState currentState;
@@ -119,7 +137,11 @@ public class MetaBot extends AI {
             }
         }
 
-        stickyActions = Integer.parseInt(config.getProperty("rl.sticky_actions", "100")) - 1;
+        stickyActions = Integer.parseInt(config.getProperty("rl.sticky_actions", "100"));
+        scheduler = new DecisionScheduler(config, stickyActions, learningAgent);
+
+        checkpointInterval = Integer.parseInt(config.getProperty("rl.checkpoint.interval", "1"));
+        asyncCheckpoints = Boolean.parseBoolean(config.getProperty("rl.checkpoint.async", "false"));
 
         reset();
     }
@@ -176,6 +198,11 @@ public class MetaBot extends AI {
         // }
         // }
 
+        scheduler = new DecisionScheduler(config, stickyActions, learningAgent);
+
+        checkpointInterval = Integer.parseInt(config.getProperty("rl.checkpoint.interval", "1"));
+        asyncCheckpoints = Boolean.parseBoolean(config.getProperty("rl.checkpoint.async", "false"));
+
         reset();
     }
 
@@ -262,8 +289,6 @@ public class MetaBot extends AI {
     public void reset(UnitTypeTable utt) {
         myUnitTypeTable = utt;
         myPlayerNumber = -1;
-        stickyCount = 0;
-        first = true;
         for (AI ai : portfolio.values()) {
             ai.reset(utt);
         }
@@ -285,17 +310,21 @@ public class MetaBot extends AI {
         previousState = null;
         currentState = null;
         myPlayerNumber = -1;
-        stickyCount = 0;
-        first = true;
+        scheduler.reset();
         learningAgent.resetChoice();
 
         choices = new ArrayList<>(3000);
-        qValues = new ArrayList<>();
-        features = new ArrayList<>();
 
     }
 
-    boolean first = true;
+    /**
+     * Returns whether a choice is due at the current frame (see
+     * {@link DecisionScheduler#isDue(int)})
+     */
+    @Override
+    public boolean decidesAt(GameState state, int player) {
+        return scheduler.isDue(state.getTime());
+    }
 
     public PlayerAction getAction(int player, GameState state) {
 
@@ -311,8 +340,7 @@ public class MetaBot extends AI {
         }
 
         // makes the learning agent learn
-        if (stickyCount == 0) {
-            stickyCount = stickyActions;
+        if (scheduler.isChoiceTime(state, player)) {
             previousState = currentState;
             currentState = state.clone();
             if (previousState != null)
@@ -325,27 +353,15 @@ public class MetaBot extends AI {
                 else
                     reward = 0;
             }
-            learningAgent.learn(previousState, choice, reward, currentState, currentState.gameover(), player);
+            learningAgent.learn(previousState, choice, reward, currentState, currentState.gameover(), player,
+                    scheduler.getElapsedIntervals());
 
-        } else {
-            stickyCount--;
         }
         // selected is the AI that will perform our action, let's try it:
         choice = learningAgent.act(state, player);
 
         choices.add(choice.getClass().getSimpleName());
 
-        if (matchCount > 1 || !first) {
-            first = false;
-            Map<String, Double> qs = learningAgent.getQValues(state, player);
-            qValues.add(qs);
-
-            Map<String, Float> feat = learningAgent.getFeatures(state, player);
-            features.add(feat);
-        } else {
-            first = false;
-        }
-
         try {
             return choice.getAction(player, state);
         } catch (Exception e) {
@@ -385,26 +401,15 @@ public class MetaBot extends AI {
         // learningAgent.saveHuman(config.getProperty("rl.output.humanprefix"));
         // }
 
-        if (config.containsKey("rl.save_weights_bin")) {
-            if (config.getProperty("rl.save_weights_bin").equalsIgnoreCase("True")) {
-                String dir = config.getProperty("rl.workingdir", "weights/");
-                if (dir.charAt(dir.length() - 1) != '/') {
-                    dir = dir + "/";
-                }
-
-                learningAgent.saveBin(dir + "weights_" + myPlayerNumber + ".bin");
-            }
+        // a single copy of the weights serves both the checkpoint and the history
+        WeightSnapshot snapshot = null;
+        gamesSinceCheckpoint++;
+        if (gamesSinceCheckpoint >= checkpointInterval) {
+            snapshot = checkpoint(matchCount);
         }
 
-        if (config.containsKey("rl.save_weights_human")) {
-            if (config.getProperty("rl.save_weights_human").equalsIgnoreCase("True")) {
-                String dir = config.getProperty("rl.workingdir", "weights/");
-                if (dir.charAt(dir.length() - 1) != '/') {
-                    dir = dir + "/";
-                }
-
-                learningAgent.saveHuman(dir + "weights_" + myPlayerNumber);
-            }
+        if (config.getProperty("rl.save_weights_history", "false").equalsIgnoreCase("True")) {
+            recordWeightHistory(snapshot != null ? snapshot : learningAgent.snapshot(false));
         }
 
         // check if it needs to save the choices
@@ -427,62 +432,159 @@ public class MetaBot extends AI {
         //     writer.close();
         // }
 
-        // if (config.containsKey("output.qvalues_prefix")) {
+        matchCount++;
+    }
 
-        //     String dir = config.getProperty("rl.workingdir");
-        //     if (dir.charAt(dir.length() - 1) != '/') {
-        //         dir = dir + "/" + config.getProperty("output.qvalues_prefix");
-        //     } else {
-        //         dir = dir + config.getProperty("output.qvalues_prefix");
-        //     }
+    /**
+     * Saves the weights as set by 'rl.save_weights_bin' and
+     * 'rl.save_weights_human' (unless they were saved since the last game), as
+     * well as the complete learner state if 'rl.checkpoint.resumable' is true
+     * (see {@link #resume(int)}). Called every 'rl.checkpoint.interval' games
+     * and once at the end of the run. If 'rl.checkpoint.async' is true, the
+     * weights are copied and written by the {@link WeightCheckpointer} in the
+     * background.
+     * 
+     * @throws IOException
+     */
+    public void checkpoint() throws IOException {
+        checkpoint(matchCount - 1);
+    }
 
-        //     // finds the file name
-        //     String filename = FileNameUtil.nextAvailableFileName(dir,
-        //             "csv");
+    /**
+     * Saves the checkpoint after the given number of games (see
+     * {@link #checkpoint()})
+     * 
+     * @param games
+     * @return the copy of the weights that was saved (null if none)
+     * @throws IOException
+     */
+    private WeightSnapshot checkpoint(int games) throws IOException {
+        if (gamesSinceCheckpoint == 0) {
+            return null;
+        }
+        gamesSinceCheckpoint = 0;
 
-        //     // saves the weights
-        //     FileWriter writer = new FileWriter(filename);
-        //     writer.write("Match,Frame,Action,Q-Value\n");
-        //     for (int i = 1; i <= qValues.size(); i++) {
-        //         for (String key : qValues.get(i - 1).keySet()) {
-        //             if (matchCount == 1) {
-        //                 writer.write(String.format(Locale.US, "%d,%d,%s,%f\n", matchCount, i + 1, key, qValues.get(i - 1).get(key)));
-        //             } else {
-        //                 writer.write(String.format(Locale.US, "%d,%d,%s,%f\n", matchCount, i, key, qValues.get(i - 1).get(key)));
-        //             }
-        //         }
-        //     }
-        //     writer.close();
-        // }
+        String dir = config.getProperty("rl.workingdir", "weights/");
+        if (dir.charAt(dir.length() - 1) != '/') {
+            dir = dir + "/";
+        }
+        String prefix = dir + "weights_" + myPlayerNumber;
+
+        if (config.getProperty("rl.checkpoint.resumable", "false").equalsIgnoreCase("True")) {
+            String path = dir + "checkpoint_" + myPlayerNumber + ".state";
+            byte[] state = learningAgent.getCheckpoint(games).toBytes();
+            if (asyncCheckpoints) {
+                WeightCheckpointer.submit("training checkpoint " + path, () -> TrainingCheckpoint.write(path, state));
+            } else {
+                TrainingCheckpoint.write(path, state);
+            }
+        }
 
-        // if (config.containsKey("output.features_prefix")) {
+        boolean saveBin = config.getProperty("rl.save_weights_bin", "false").equalsIgnoreCase("True");
+        boolean saveHuman = config.getProperty("rl.save_weights_human", "false").equalsIgnoreCase("True");
+        if (!saveBin && !saveHuman) {
+            return null;
+        }
 
-        //     String dir = config.getProperty("rl.workingdir");
-        //     if (dir.charAt(dir.length() - 1) != '/') {
-        //         dir = dir + "/" + config.getProperty("output.features_prefix");
-        //     } else {
-        //         dir = dir + config.getProperty("output.features_prefix");
-        //     }
+        WeightSnapshot snapshot = learningAgent.snapshot();
+        if (asyncCheckpoints) {
+            WeightCheckpointer.submit(snapshot, saveBin ? prefix + ".bin" : null, saveBin ? prefix : null,
+                    saveHuman ? prefix : null);
+            return snapshot;
+        }
 
-        //     // finds the file name
-        //     String filename = FileNameUtil.nextAvailableFileName(dir,
-        //             "csv");
+        if (saveBin) {
+            snapshot.saveBin(prefix + ".bin");
+            snapshot.saveFanOutBin(prefix);
+        }
+        if (saveHuman) {
+            snapshot.saveHuman(prefix);
+        }
+        return snapshot;
+    }
 
-        //     // saves the weights
-        //     FileWriter writer = new FileWriter(filename);
-        //     writer.write("Match,Frame,Feature,Value\n");
-        //     for (int i = 1; i <= features.size(); i++) {
-        //         for (String key : features.get(i - 1).keySet()) {
-        //             if (matchCount == 1) {
-        //                 writer.write(String.format(Locale.US, "%d,%d,%s,%f\n", matchCount, i + 1, key, features.get(i - 1).get(key)));
-        //             } else {
-        //                 writer.write(String.format(Locale.US, "%d,%d,%s,%f\n", matchCount, i, key, features.get(i - 1).get(key)));
-        //             }
-        //         }
-        //     }
-        //     writer.close();
-        // }
-        matchCount++;
+    /**
+     * Restores the learner state and game count saved in
+     * checkpoint_[player].state in 'rl.workingdir' (see {@link #checkpoint()}),
+     * so that training continues where it stopped. The weight history records of
+     * the games played after the checkpoint are discarded.
+     * 
+     * @param player the player (0 or 1) this bot plays as
+     * @return the number of games played when the checkpoint was taken (0 if
+     *         there is no checkpoint)
+     * @throws IOException
+     */
+    public int resume(int player) throws IOException {
+        String dir = config.getProperty("rl.workingdir", "weights/");
+        if (dir.charAt(dir.length() - 1) != '/') {
+            dir = dir + "/";
+        }
+        String path = dir + "checkpoint_" + player + ".state";
+
+        if (!new File(path).exists()) {
+            logger.info("No training checkpoint at {}, starting from scratch", path);
+            return 0;
+        }
+
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(path);
+        learningAgent.restore(checkpoint);
+        matchCount = checkpoint.getGames() + 1;
+        gamesSinceCheckpoint = 0;
+        logger.info("Resuming from {} after {} games", path, checkpoint.getGames());
+
+        // the games after the checkpoint are played again, so their records are discarded
+        String historyPath = dir + "weights_" + player + ".history";
+        if (config.getProperty("rl.save_weights_history", "false").equalsIgnoreCase("True")
+                && new File(historyPath).exists()) {
+            long discarded = WeightHistory.truncateAfter(historyPath, checkpoint.getGames());
+            logger.info("Discarded {} records after game {} from {}", discarded, checkpoint.getGames(), historyPath);
+        }
+        return checkpoint.getGames();
+    }
+
+    /**
+     * Appends the weights of this game to weights_[player].history in
+     * 'rl.workingdir' (see {@link WeightHistory}), in the background if
+     * 'rl.checkpoint.async' is true
+     * 
+     * @param snapshot the weights after this game
+     * @throws IOException
+     */
+    private void recordWeightHistory(WeightSnapshot snapshot) throws IOException {
+        int game = matchCount;
+
+        if (weightHistory == null) {
+            String dir = config.getProperty("rl.workingdir", "weights/");
+            if (dir.charAt(dir.length() - 1) != '/') {
+                dir = dir + "/";
+            }
+            weightHistory = WeightHistory.append(dir + "weights_" + myPlayerNumber + ".history",
+                    snapshot.getActionNames(), snapshot.getFeatureNames());
+        }
+
+        WeightHistory history = weightHistory;
+        if (asyncCheckpoints) {
+            WeightCheckpointer.submit("weight history of game " + game, () -> history.record(game, snapshot));
+        } else {
+            history.record(game, snapshot);
+        }
+    }
+
+    /**
+     * Closes the weight history (if any), after its pending records are written
+     */
+    public void closeWeightHistory() {
+        if (weightHistory == null) {
+            return;
+        }
+
+        WeightHistory history = weightHistory;
+        weightHistory = null;
+        WeightCheckpointer.submit("weight history", history::close);
+    }
+
+    public Sarsa getLearningAgent() {
+        return learningAgent;
     }
 
     public AI clone() {
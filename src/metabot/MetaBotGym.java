@@ -1,17 +1,43 @@
 package metabot;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
 import ai.core.AI;
+import features.FeatureExtractor;
+import features.SparseFeatures;
+import rl.MapCache;
 import rts.GameState;
+import rts.PhysicalGameState;
 import rts.PlayerAction;
+import rts.units.Unit;
+import rts.units.UnitType;
 import rts.units.UnitTypeTable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Lets an external agent choose which portfolio member plays each frame.
+ *
+ * Observations can be written straight into a caller-provided (direct)
+ * {@link ByteBuffer} via {@link #setObservationBuffer(ByteBuffer, int)} and
+ * {@link #writeObservation()}, so that the trainer reads them without copies.
+ * The observation is a sequence of little-endian float32 values:
+ * <ol>
+ * <li>the normalized features, in the order of {@link #getFeatureNames()};</li>
+ * <li>if 'gym.observation.unit_planes' is true, the unit planes, with shape
+ * [planes][height][width]. Plane (owner * T + t) holds 1 where a unit of the
+ * t-th non-resource type of the {@link UnitTypeTable} is, where owner 0 is
+ * 'gym.player', owner 1 is the opponent and T is the number of non-resource
+ * types. The last plane holds the resources left on each resource tile.</li>
+ * </ol>
+ * {@link #getObservationSize()} returns the number of floats per observation.
+ */
 public class MetaBotGym {
 
     Logger logger;
@@ -20,6 +46,25 @@ public class MetaBotGym {
 
     List<AI> portfolio;
 
+    // BEGIN -- the game owned by this gym (only used via newGame / stepFrame)
+    private String mapLocation;
+    private int maxCycles;
+    private int player;
+    private String opponentName;
+    private AI opponent;
+    private FeatureExtractor featureExtractor;
+    private List<String> featureNames;
+    private GameState state;
+    private boolean done;
+    private int stickyActions;
+    // END -- the game owned by this gym
+
+    // BEGIN -- observation buffer (see setObservationBuffer)
+    private boolean unitPlanes;
+    private List<UnitType> planeTypes;
+    private FloatBuffer observation;
+    // END -- observation buffer
+
     public MetaBotGym(UnitTypeTable utt, Properties config) {
         logger = LogManager.getLogger(MetaBotGym.class);
 
@@ -29,6 +74,21 @@ public class MetaBotGym {
                 .getProperty("portfolio.members", "WorkerRush, LightRush, RangedRush, HeavyRush, Expand, BuildBarracks")
                 .split(",");
         setUpPortfolio(members);
+
+        mapLocation = config.getProperty("map_location", "maps/24x24/basesWorkers24x24.xml");
+        maxCycles = Integer.parseInt(config.getProperty("max_cycles", "3000"));
+        player = Integer.parseInt(config.getProperty("gym.player", "0"));
+        opponentName = config.getProperty("gym.opponent", "ai.abstraction.LightRush");
+        stickyActions = Integer.parseInt(config.getProperty("rl.sticky_actions", "100"));
+
+        featureExtractor = FeatureExtractor.fromConfig(config);
+
+        unitPlanes = Boolean.parseBoolean(config.getProperty("gym.observation.unit_planes", "false"));
+        planeTypes = new ArrayList<>();
+        for (UnitType type : utt.getUnitTypes()) {
+            if (!type.isResource)
+                planeTypes.add(type);
+        }
     }
 
     private void setUpPortfolio(String[] members) {
@@ -63,6 +123,254 @@ public class MetaBotGym {
         }
     }
 
+    /**
+     * Starts a new game in the map given by 'map_location', played by the
+     * portfolio (as 'gym.player') against the AI named in 'gym.opponent'.
+     * Resets the portfolio and the opponent.
+     *
+     * @return the initial state of the new game
+     */
+    public GameState newGame() {
+        PhysicalGameState pgs;
+        try {
+            pgs = MapCache.load(mapLocation, utt);
+        } catch (Exception e) {
+            logger.error("Error while loading map from file: " + mapLocation, e);
+            throw new RuntimeException(e);
+        }
+
+        if (opponent == null) {
+            try {
+                opponent = (AI) Class.forName(opponentName).getConstructor(UnitTypeTable.class).newInstance(utt);
+            } catch (Exception e) {
+                logger.error("Exception while loading opponent " + opponentName, e);
+                throw new RuntimeException(e);
+            }
+        } else {
+            opponent.reset();
+        }
+        reset();
+
+        state = new GameState(pgs, utt);
+        done = false;
+        return state;
+    }
+
+    /**
+     * Plays one frame of the game started by {@link #newGame()}: the portfolio
+     * member at aiIndex acts for 'gym.player' and the opponent acts for the
+     * other player. Starts a game if none is running.
+     *
+     * @param aiIndex
+     * @return the reward of this frame: 1 (victory), -1 (defeat) or 0 otherwise
+     */
+    public double stepFrame(int aiIndex) {
+        if (state == null || done) {
+            newGame();
+        }
+
+        PlayerAction playerAction = getAction(player, state, aiIndex);
+
+        PlayerAction opponentAction;
+        try {
+            opponentAction = opponent.getAction(1 - player, state);
+        } catch (Exception e) {
+            logger.error("Exception while getting opponent action in frame #" + state.getTime(), e);
+            opponentAction = new PlayerAction();
+            opponentAction.fillWithNones(state, 1 - player, 1);
+        }
+
+        state.issueSafe(playerAction);
+        state.issueSafe(opponentAction);
+
+        boolean gameover = state.cycle();
+        done = gameover || state.getTime() >= maxCycles;
+
+        if (!done) {
+            return 0;
+        }
+
+        int winner = gameover ? state.winner() : -1;
+        try {
+            opponent.gameOver(winner);
+        } catch (Exception e) {
+            logger.error("Exception while finishing the opponent's game", e);
+        }
+
+        if (winner == player)
+            return 1;
+        if (winner == 1 - player)
+            return -1;
+        return 0;
+    }
+
+    /**
+     * Plays up to frames frames with the portfolio member at aiIndex, stopping
+     * early if the game finishes. If an observation buffer was set, the
+     * observation of the resulting state is written to it.
+     *
+     * @param aiIndex
+     * @param frames
+     * @return the sum of the rewards of the frames played
+     */
+    public double step(int aiIndex, int frames) {
+        double reward = 0;
+        for (int i = 0; i < frames; i++) {
+            reward += stepFrame(aiIndex);
+            if (done)
+                break;
+        }
+
+        if (observation != null) {
+            writeObservation();
+        }
+        return reward;
+    }
+
+    /**
+     * Plays 'rl.sticky_actions' frames with the portfolio member at aiIndex (see
+     * {@link #step(int, int)})
+     *
+     * @param aiIndex
+     * @return
+     */
+    public double step(int aiIndex) {
+        return step(aiIndex, stickyActions);
+    }
+
+    /**
+     * Returns whether the game started by {@link #newGame()} has finished
+     * (gameover or 'max_cycles' reached)
+     *
+     * @return
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns the current state of the game started by {@link #newGame()}
+     *
+     * @return
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the feature names, in the order used by
+     * {@link #writeFeatures(float[], int)}
+     *
+     * @return
+     */
+    public List<String> getFeatureNames() {
+        if (featureNames == null) {
+            GameState reference = state != null ? state : newGame();
+            featureNames = featureExtractor.getFeatureNames(reference);
+        }
+        return featureNames;
+    }
+
+    /**
+     * Writes the normalized features of the current game state (from the point of
+     * view of 'gym.player') into out, starting at offset, in the order given by
+     * {@link #getFeatureNames()}
+     *
+     * @param out
+     * @param offset
+     */
+    public void writeFeatures(float[] out, int offset) {
+        featureExtractor.getSparseFeatures(state, player).toDense(out, offset, getFeatureNames().size());
+    }
+
+    /**
+     * Returns the number of unit planes of the observation (zero if
+     * 'gym.observation.unit_planes' is false)
+     *
+     * @return
+     */
+    public int getNumUnitPlanes() {
+        return unitPlanes ? 2 * planeTypes.size() + 1 : 0;
+    }
+
+    /**
+     * Returns the number of float32 values of an observation (see the class
+     * documentation for the layout)
+     *
+     * @return
+     */
+    public int getObservationSize() {
+        int size = getFeatureNames().size();
+        if (unitPlanes) {
+            PhysicalGameState pgs = state.getPhysicalGameState();
+            size += getNumUnitPlanes() * pgs.getWidth() * pgs.getHeight();
+        }
+        return size;
+    }
+
+    /**
+     * Sets the region where {@link #writeObservation()} writes: the
+     * {@link #getObservationSize()} floats starting at byte offset of buffer. The
+     * buffer's position, limit and byte order are not modified.
+     *
+     * @param buffer
+     * @param offset in bytes
+     */
+    public void setObservationBuffer(ByteBuffer buffer, int offset) {
+        ByteBuffer region = buffer.duplicate();
+        region.position(offset);
+        region.limit(offset + 4 * getObservationSize());
+        observation = region.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    /**
+     * Writes the observation of the current game state into the region set by
+     * {@link #setObservationBuffer(ByteBuffer, int)}
+     */
+    public void writeObservation() {
+        if (observation == null) {
+            throw new IllegalStateException("Observation buffer was not set");
+        }
+
+        List<String> names = getFeatureNames();
+        SparseFeatures features = featureExtractor.getSparseFeatures(state, player);
+        for (int i = 0; i < names.size(); i++) {
+            observation.put(i, 0);
+        }
+        for (int i = 0; i < features.size(); i++) {
+            observation.put(features.index(i), features.value(i));
+        }
+
+        if (!unitPlanes) {
+            return;
+        }
+
+        PhysicalGameState pgs = state.getPhysicalGameState();
+        int width = pgs.getWidth();
+        int planeSize = width * pgs.getHeight();
+        int base = names.size();
+        int resourcePlane = base + 2 * planeTypes.size() * planeSize;
+
+        for (int i = base; i < resourcePlane + planeSize; i++) {
+            observation.put(i, 0);
+        }
+
+        for (Unit u : pgs.getUnits()) {
+            int tile = u.getY() * width + u.getX();
+            if (u.getType().isResource) {
+                observation.put(resourcePlane + tile, u.getResources());
+                continue;
+            }
+            int owner = u.getPlayer() == player ? 0 : 1;
+            int plane = owner * planeTypes.size() + planeTypes.indexOf(u.getType());
+            observation.put(base + plane * planeSize + tile, 1);
+        }
+    }
+
+    public int getNumActions() {
+        return portfolio.size();
+    }
+
     public void reset() {
         reset(utt);
     }
@@ -0,0 +1,235 @@
+package metabot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import rts.units.UnitTypeTable;
+
+/**
+ * Owns several independent {@link MetaBotGym} environments and steps all of
+ * them in a single call, so that an external trainer pays one call per step
+ * instead of one per environment.
+ *
+ * Results are exposed as primitive arrays, indexed by environment: rewards,
+ * dones and features (numEnvs x numFeatures, row-major). Finished games are
+ * restarted automatically, so the features of a done environment already
+ * belong to the first state of its next game.
+ *
+ * Environments are stepped in parallel when 'gym.num_threads' is greater than
+ * 1.
+ *
+ * Alternatively, observations can be written into a caller-provided buffer
+ * (see {@link #setObservationBuffer(ByteBuffer)}), in which case environment i
+ * writes its observation (with the layout described in {@link MetaBotGym}) at
+ * byte offset i * 4 * {@link #getObservationSize()}.
+ */
+public class MetaBotGymVec {
+
+    Logger logger;
+
+    private MetaBotGym[] envs;
+
+    private ExecutorService executor;
+
+    private int numFeatures;
+
+    private double[] rewards;
+    private boolean[] dones;
+    private float[] features;
+
+    private boolean useObservationBuffer;
+
+    public MetaBotGymVec(UnitTypeTable utt, Properties config, int numEnvs) {
+        logger = LogManager.getLogger(MetaBotGymVec.class);
+
+        envs = new MetaBotGym[numEnvs];
+        for (int i = 0; i < numEnvs; i++) {
+            envs[i] = new MetaBotGym(utt, config);
+        }
+
+        int numThreads = Integer.parseInt(config.getProperty("gym.num_threads", "1"));
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(Math.min(numThreads, numEnvs));
+        }
+
+        numFeatures = envs[0].getFeatureNames().size();
+
+        rewards = new double[numEnvs];
+        dones = new boolean[numEnvs];
+        features = new float[numEnvs * numFeatures];
+    }
+
+    /**
+     * Starts a new game in every environment
+     *
+     * @return the features of the initial states
+     */
+    public float[] reset() {
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].newGame();
+            observe(i);
+            rewards[i] = 0;
+            dones[i] = false;
+        }
+        return features;
+    }
+
+    /**
+     * Plays one frame in every environment, with the portfolio member at
+     * aiIndices[i] acting in environment i. Results are available via
+     * {@link #getRewards()}, {@link #getDones()} and {@link #getFeatures()}
+     *
+     * @param aiIndices
+     */
+    public void step(int[] aiIndices) {
+        step(aiIndices, 1);
+    }
+
+    /**
+     * Plays up to frames frames in every environment, with the portfolio member at
+     * aiIndices[i] acting in environment i (see {@link MetaBotGym#step(int, int)}).
+     * Rewards are accumulated over the frames played.
+     *
+     * @param aiIndices
+     * @param frames
+     */
+    public void step(int[] aiIndices, int frames) {
+        if (aiIndices.length != envs.length) {
+            throw new IllegalArgumentException(
+                    "Received " + aiIndices.length + " actions for " + envs.length + " environments");
+        }
+
+        if (executor == null) {
+            for (int i = 0; i < envs.length; i++) {
+                stepEnv(i, aiIndices[i], frames);
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(envs.length);
+        for (int i = 0; i < envs.length; i++) {
+            final int env = i;
+            tasks.add(() -> {
+                stepEnv(env, aiIndices[env], frames);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Exception while stepping the environments", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Steps a single environment, restarting its game if it finished
+     *
+     * @param env
+     * @param aiIndex
+     * @param frames
+     */
+    private void stepEnv(int env, int aiIndex, int frames) {
+        double reward = 0;
+        for (int i = 0; i < frames && !envs[env].isDone(); i++) {
+            reward += envs[env].stepFrame(aiIndex);
+        }
+        rewards[env] = reward;
+        dones[env] = envs[env].isDone();
+
+        if (dones[env]) {
+            envs[env].newGame();
+        }
+        observe(env);
+    }
+
+    /**
+     * Writes the observation of an environment either to the observation buffer
+     * (if set) or to the features array
+     *
+     * @param env
+     */
+    private void observe(int env) {
+        if (useObservationBuffer) {
+            envs[env].writeObservation();
+        } else {
+            envs[env].writeFeatures(features, env * numFeatures);
+        }
+    }
+
+    /**
+     * Makes every environment write its observation into buffer (see the class
+     * documentation for the offsets) instead of the features array. The buffer
+     * must hold at least numEnvs * 4 * {@link #getObservationSize()} bytes.
+     *
+     * @param buffer
+     */
+    public void setObservationBuffer(ByteBuffer buffer) {
+        int observationBytes = 4 * getObservationSize();
+        if (buffer.capacity() < envs.length * observationBytes) {
+            throw new IllegalArgumentException("Observation buffer holds " + buffer.capacity()
+                    + " bytes, but " + envs.length * observationBytes + " are required");
+        }
+
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].setObservationBuffer(buffer, i * observationBytes);
+        }
+        useObservationBuffer = true;
+    }
+
+    /**
+     * Returns the number of float32 values of each environment's observation
+     *
+     * @return
+     */
+    public int getObservationSize() {
+        return envs[0].getObservationSize();
+    }
+
+    public double[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public float[] getFeatures() {
+        return features;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getNumEnvs() {
+        return envs.length;
+    }
+
+    public List<String> getFeatureNames() {
+        return envs[0].getFeatureNames();
+    }
+
+    /**
+     * Shuts the thread pool down (if any)
+     */
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+}
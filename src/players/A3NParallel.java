@@ -0,0 +1,27 @@
+package players;
+
+import rts.units.UnitTypeTable;
+
+/**
+ * Root-parallel version of {@link A3N} (see {@link RootParallel})
+ */
+public class A3NParallel extends RootParallel {
+
+	/**
+	 * One instance per core, with the standard 100 ms time budget
+	 * @param types
+	 */
+	public A3NParallel(UnitTypeTable types) {
+		this(types, Runtime.getRuntime().availableProcessors(), 100, -1);
+	}
+
+	/**
+	 * @param types
+	 * @param threads number of instances searching in parallel
+	 * @param timeBudget in milliseconds (-1 for unlimited)
+	 * @param playoutBudget total playouts per decision (-1 for unlimited)
+	 */
+	public A3NParallel(UnitTypeTable types, int threads, int timeBudget, int playoutBudget) {
+		super(types, A3N::new, threads, timeBudget, playoutBudget);
+	}
+}
@@ -0,0 +1,79 @@
+package players;
+
+import java.lang.reflect.Field;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.abstraction.LightRush;
+import ai.core.AI;
+import rl.MapCache;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how many playouts a search-based AI runs per decision with its
+ * time-based defaults, to calibrate the fixed budgets of
+ * {@link OpponentFactory}. The AI plays against LightRush, and the playouts
+ * are read from its 'total_runs' statistic (kept by the MCTS-based AIs).
+ * 
+ * Usage: BudgetCalibration aiClass [map] [frames]
+ * 
+ * Prints the line to be added to the experiment properties. AIs that
+ * {@link OpponentFactory} cannot give iteration budgets, or that do not report
+ * their playouts, are refused with an {@link IllegalArgumentException}.
+ */
+public class BudgetCalibration {
+
+	private static final Logger logger = LogManager.getRootLogger();
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			logger.error("Usage: BudgetCalibration aiClass [map] [frames]");
+			return;
+		}
+		String map = args.length > 1 ? args[1] : "maps/24x24/basesWorkers24x24.xml";
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		Class<?> aiClass = Class.forName(args[0]);
+		if (!OpponentFactory.isIterationBudgeted(aiClass)) {
+			throw new IllegalArgumentException(aiClass.getSimpleName()
+					+ " cannot be given an iterations budget by OpponentFactory");
+		}
+		AI ai = (AI) aiClass.getConstructor(UnitTypeTable.class).newInstance(types);
+		AI opponent = new LightRush(types);
+
+		Field totalRuns;
+		try {
+			totalRuns = aiClass.getField("total_runs");
+		} catch (NoSuchFieldException e) {
+			throw new IllegalArgumentException(
+					aiClass.getSimpleName() + " does not report its playouts (total_runs)", e);
+		}
+
+		GameState state = new GameState(MapCache.load(map, types), types);
+		int decisions = 0;
+		boolean gameover = false;
+		while (!gameover && state.getTime() < frames) {
+			if (state.canExecuteAnyAction(0)) {
+				decisions++;
+			}
+			PlayerAction action = ai.getAction(0, state);
+			PlayerAction opponentAction = opponent.getAction(1, state);
+			state.issueSafe(action);
+			state.issueSafe(opponentAction);
+			gameover = state.cycle();
+		}
+
+		if (decisions == 0) {
+			logger.error("{} made no decisions in {} frames of {}", aiClass.getSimpleName(), frames, map);
+			return;
+		}
+		long playouts = ((Number) totalRuns.get(ai)).longValue();
+		System.out.println(String.format("# %d playouts in %d decisions", playouts, decisions));
+		System.out.println(String.format("opponent.iterations.%s = %d", ai.getClass().getSimpleName(),
+				playouts / decisions));
+	}
+}
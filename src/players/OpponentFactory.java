@@ -0,0 +1,99 @@
+package players;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import ai.core.AI;
+import ai.core.AIWithComputationBudget;
+import rts.units.UnitTypeTable;
+
+/**
+ * Creates the opponents of the experiments, optionally with deterministic
+ * budgets. With 'opponent.budget = iterations' in the experiment properties,
+ * the search-based opponents whose searches stop at the iterations budget
+ * ({@link A1N}, {@link A2N}, {@link A3N} and their root-parallel versions) have
+ * their time budget removed and a fixed number of iterations/playouts per
+ * decision set instead, so that their strength does not depend on machine
+ * load. The number of iterations comes from 'opponent.iterations.SimpleName'
+ * or, if absent, from 'opponent.iterations'. {@link BudgetCalibration}
+ * measures the iterations that match their time-based defaults.
+ * 
+ * Other AIs extending {@link AIWithComputationBudget} (e.g. {@link GAB} and
+ * {@link SAB}, whose script searches do not count playouts the same way) are
+ * refused with an {@link IllegalArgumentException} in that mode, rather than
+ * silently playing without a time budget. AIs without budgets are created as
+ * usual.
+ * 
+ * The root-parallel players ({@link RootParallel}) use 'opponent.threads'
+ * threads (default: number of cores) in both modes.
+ * 
+ * With 'opponent.budget = time' (the default), opponents are created as
+ * before, with their time-based defaults.
+ */
+public class OpponentFactory {
+
+	/**
+	 * The AIs whose searches are known to stop at the iterations budget
+	 */
+	private static final List<Class<?>> ITERATION_BUDGETED = Arrays.asList(A1N.class, A2N.class, A3N.class);
+
+	public static AI create(String aiName, UnitTypeTable types, Properties config) throws ClassNotFoundException,
+			NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+		boolean iterations = config.getProperty("opponent.budget", "time").trim().equalsIgnoreCase("iterations");
+		int threads = Integer.parseInt(
+				config.getProperty("opponent.threads", "" + Runtime.getRuntime().availableProcessors()).trim());
+
+		Class<?> aiClass = Class.forName(aiName);
+
+		if (RootParallel.class.isAssignableFrom(aiClass)) {
+			Constructor<?> cons = aiClass.getConstructor(UnitTypeTable.class, int.class, int.class, int.class);
+			if (iterations) {
+				return (AI) cons.newInstance(types, threads, -1, getIterations(aiClass, config));
+			}
+			return (AI) cons.newInstance(types, threads, 100, -1);
+		}
+
+		AI ai = (AI) aiClass.getConstructor(UnitTypeTable.class).newInstance(types);
+
+		if (iterations && ai instanceof AIWithComputationBudget) {
+			if (!isIterationBudgeted(aiClass)) {
+				throw new IllegalArgumentException(aiClass.getSimpleName()
+						+ " is not known to stop at iteration budgets (supported: A1N, A2N, A3N and their"
+						+ " root-parallel versions). Use 'opponent.budget = time' for it");
+			}
+			AIWithComputationBudget budgeted = (AIWithComputationBudget) ai;
+			budgeted.setTimeBudget(-1);
+			budgeted.setIterationsBudget(getIterations(aiClass, config));
+		}
+		return ai;
+	}
+
+	/**
+	 * Returns whether the searches of the AI are known to stop at the
+	 * iterations budget
+	 * @param aiClass
+	 * @return
+	 */
+	static boolean isIterationBudgeted(Class<?> aiClass) {
+		return ITERATION_BUDGETED.contains(aiClass) || RootParallel.class.isAssignableFrom(aiClass);
+	}
+
+	/**
+	 * Returns the iterations budget configured for the AI
+	 * @param aiClass
+	 * @param config
+	 * @return
+	 */
+	private static int getIterations(Class<?> aiClass, Properties config) {
+		String value = config.getProperty(
+				"opponent.iterations." + aiClass.getSimpleName(), config.getProperty("opponent.iterations"));
+		if (value == null) {
+			throw new IllegalArgumentException("No iterations budget for " + aiClass.getSimpleName()
+					+ ". Set 'opponent.iterations' (see players.BudgetCalibration)");
+		}
+		return Integer.parseInt(value.trim());
+	}
+}
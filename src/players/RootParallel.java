@@ -0,0 +1,218 @@
+package players;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import ai.core.AI;
+import ai.core.AIWithComputationBudget;
+import ai.core.ParameterSpecification;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * Root-parallel search: runs independent instances of a search-based AI on
+ * several threads, each from its own copy of the state, and combines their
+ * results by voting. Each unit action gets one vote per instance that chose
+ * it, and the instance whose player action collects the most votes wins (ties
+ * go to the first instance).
+ * 
+ * Budgets are set on every instance: the time budget is used as is (the
+ * instances run simultaneously), whereas the playout (iterations) budget is
+ * split among them, so that the total number of playouts per decision does not
+ * depend on the number of threads. A negative budget means unlimited.
+ * 
+ * The searches of every instance (and clone) run on a single shared pool, whose
+ * idle threads terminate after a while, so that no threads are left behind by
+ * discarded instances.
+ * 
+ * Restriction: microRTS gives IDs to new units from the unsynchronized static
+ * counter Unit.next_ID, so units produced in the playouts of simultaneous
+ * searches may get repeated IDs, within a playout too (a thread may write back
+ * an older value of the counter). This only affects the simulated states, which
+ * are discarded: the counter never falls below its value at the start of the
+ * decision, so units produced later in the actual game do not repeat the IDs of
+ * existing ones. That holds as long as nothing else in the same class loader
+ * creates units during the decision, hence:
+ * <ul>
+ * <li>decisions of RootParallel players must not overlap (e.g. in environments
+ * stepped in parallel); an overlapping decision throws
+ * {@link IllegalStateException};</li>
+ * <li>games running concurrently in the same JVM must use separate class
+ * loaders (see rl.IsolatedJob).</li>
+ * </ul>
+ * The chosen player action is checked to refer to distinct units of the actual
+ * state (an {@link IllegalStateException} is thrown otherwise).
+ */
+public class RootParallel extends AI {
+
+	/**
+	 * Grows to the number of searches running at the same time
+	 */
+	private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "root-parallel");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Whether a decision is being searched (by any instance)
+	 */
+	private static final AtomicBoolean searching = new AtomicBoolean();
+
+	private UnitTypeTable types;
+	private Function<UnitTypeTable, AI> factory;
+	private int threads;
+	private int timeBudget;
+	private int playoutBudget;
+
+	private AI[] instances;
+
+	public RootParallel(UnitTypeTable types, Function<UnitTypeTable, AI> factory, int threads, int timeBudget,
+			int playoutBudget) {
+		this.types = types;
+		this.factory = factory;
+		this.threads = Math.max(1, threads);
+		this.timeBudget = timeBudget;
+		this.playoutBudget = playoutBudget;
+
+		instances = new AI[this.threads];
+		for (int i = 0; i < instances.length; i++) {
+			instances[i] = factory.apply(types);
+			if (!(instances[i] instanceof AIWithComputationBudget)) {
+				throw new IllegalArgumentException(
+						instances[i].getClass().getSimpleName() + " does not accept computation budgets");
+			}
+			AIWithComputationBudget instance = (AIWithComputationBudget) instances[i];
+			instance.setTimeBudget(timeBudget);
+			instance.setIterationsBudget(
+					playoutBudget < 0 ? -1 : (playoutBudget + this.threads - 1) / this.threads);
+		}
+	}
+
+	@Override
+	public PlayerAction getAction(int player, GameState gs) throws Exception {
+		if (!gs.canExecuteAnyAction(player)) {
+			return new PlayerAction();
+		}
+
+		if (!searching.compareAndSet(false, true)) {
+			throw new IllegalStateException(
+					"Overlapping RootParallel decisions would share the unit ID counter of microRTS");
+		}
+
+		List<PlayerAction> results = new ArrayList<>(instances.length);
+		try {
+			List<Callable<PlayerAction>> searches = new ArrayList<>(instances.length);
+			for (AI instance : instances) {
+				GameState copy = gs.clone();
+				searches.add(() -> instance.getAction(player, copy));
+			}
+
+			for (Future<PlayerAction> search : pool.invokeAll(searches)) {
+				results.add(search.get());
+			}
+		} finally {
+			searching.set(false);
+		}
+
+		PlayerAction chosen = vote(results);
+		check(chosen, player, gs);
+		return chosen;
+	}
+
+	/**
+	 * Throws an {@link IllegalStateException} unless the units of the action are
+	 * distinct units of the player in the actual state
+	 * @param action
+	 * @param player
+	 * @param gs
+	 */
+	private void check(PlayerAction action, int player, GameState gs) {
+		Set<Long> ids = new HashSet<>();
+		for (Pair<Unit, UnitAction> unitAction : action.getActions()) {
+			long id = unitAction.m_a.getID();
+			Unit unit = gs.getUnit(id);
+			if (!ids.add(id) || unit == null || unit.getPlayer() != player) {
+				throw new IllegalStateException("Root-parallel action refers to unit " + id
+						+ ", which is repeated or not a unit of player " + player + " (repeated unit IDs?)");
+			}
+		}
+	}
+
+	/**
+	 * Returns the player action whose unit actions were chosen by the most
+	 * instances
+	 * @param results
+	 * @return
+	 */
+	private PlayerAction vote(List<PlayerAction> results) {
+		// votes per unit (by ID, as each instance searched its own copy) and action
+		Map<Long, Map<UnitAction, Integer>> votes = new HashMap<>();
+		for (PlayerAction result : results) {
+			for (Pair<Unit, UnitAction> unitAction : result.getActions()) {
+				votes.computeIfAbsent(unitAction.m_a.getID(), id -> new HashMap<>())
+					.merge(unitAction.m_b, 1, Integer::sum);
+			}
+		}
+
+		PlayerAction best = results.get(0);
+		int bestVotes = -1;
+		for (PlayerAction result : results) {
+			int total = 0;
+			for (Pair<Unit, UnitAction> unitAction : result.getActions()) {
+				total += votes.get(unitAction.m_a.getID()).get(unitAction.m_b);
+			}
+			if (total > bestVotes) {
+				best = result;
+				bestVotes = total;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	public void reset() {
+		for (AI instance : instances) {
+			instance.reset();
+		}
+	}
+
+	@Override
+	public void reset(UnitTypeTable types) {
+		this.types = types;
+		for (AI instance : instances) {
+			instance.reset(types);
+		}
+	}
+
+	@Override
+	public void gameOver(int winner) throws Exception {
+		for (AI instance : instances) {
+			instance.gameOver(winner);
+		}
+	}
+
+	@Override
+	public AI clone() {
+		return new RootParallel(types, factory, threads, timeBudget, playoutBudget);
+	}
+
+	@Override
+	public List<ParameterSpecification> getParameters() {
+		return new ArrayList<>();
+	}
+}
@@ -0,0 +1,106 @@
+package rl;
+
+import java.util.Properties;
+
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import rts.GameState;
+
+/**
+ * Ends decided matches early: a match is adjudicated to a player once the
+ * material/economy evaluation of the state stays beyond a margin in that
+ * player's favor for a number of frames.
+ * 
+ * The evaluation is {@link SimpleSqrtEvaluationFunction3} from player 0's
+ * point of view, which lies in [-1, 1] (1 when player 1 has nothing left).
+ */
+public class Adjudicator {
+
+    private EvaluationFunction evaluation;
+
+    /**
+     * Evaluation advantage (within (0, 1]) that a player must hold
+     */
+    private float margin;
+
+    /**
+     * Number of frames the advantage must be held
+     */
+    private int frames;
+
+    private int leader;
+    private int leadingSince;
+    private int winner;
+
+    public Adjudicator(float margin, int frames) {
+        this.margin = margin;
+        this.frames = frames;
+        evaluation = new SimpleSqrtEvaluationFunction3();
+        reset();
+    }
+
+    /**
+     * Creates an adjudicator from 'runner.adjudication.margin' and
+     * 'runner.adjudication.frames', or returns null if the margin is not
+     * specified
+     * 
+     * @param config
+     * @return
+     */
+    public static Adjudicator fromConfig(Properties config) {
+        if (!config.containsKey("runner.adjudication.margin")) {
+            return null;
+        }
+        return new Adjudicator(
+            Float.parseFloat(config.getProperty("runner.adjudication.margin")),
+            Integer.parseInt(config.getProperty("runner.adjudication.frames", "300"))
+        );
+    }
+
+    /**
+     * Prepares for a new match
+     */
+    public void reset() {
+        leader = -1;
+        leadingSince = 0;
+        winner = -1;
+    }
+
+    /**
+     * Evaluates the state and returns whether the match has been adjudicated
+     * 
+     * @param state
+     * @return
+     */
+    public boolean update(GameState state) {
+        float value = evaluation.evaluate(0, 1, state);
+
+        int currentLeader = -1;
+        if (value >= margin) {
+            currentLeader = 0;
+        } else if (value <= -margin) {
+            currentLeader = 1;
+        }
+
+        if (currentLeader != leader) {
+            leader = currentLeader;
+            leadingSince = state.getTime();
+        } else if (leader != -1 && state.getTime() - leadingSince >= frames) {
+            winner = leader;
+        }
+        return isAdjudicated();
+    }
+
+    public boolean isAdjudicated() {
+        return winner != -1;
+    }
+
+    /**
+     * Returns the player the match was adjudicated to (or -1 if it was not)
+     * 
+     * @return
+     */
+    public int winner() {
+        return winner;
+    }
+}
@@ -0,0 +1,210 @@
+package rl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tracks how much a learner is still changing: for each game and portfolio
+ * member, the mean absolute TD error and the mean norm of the weight updates
+ * (|alpha * delta| * ||features||) of the choices of that member. The
+ * statistics of the last window games are kept, and rolling means over them
+ * are exposed.
+ */
+public class ConvergenceMonitor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String[] actionNames;
+    private int window;
+
+    // BEGIN -- the current game
+    private double[] tdErrorSum;
+    private double[] updateNormSum;
+    private int[] updates;
+    // END -- the current game
+
+    // BEGIN -- the last games, indexed [game % window][action] (NaN if the member was not chosen)
+    private double[][] tdErrors;
+    private double[][] updateNorms;
+    private int[][] updateCounts;
+    private int games;
+    // END -- the last games
+
+    /**
+     * @param actionNames the portfolio members, indexed by action
+     * @param window      the number of games kept
+     */
+    public ConvergenceMonitor(String[] actionNames, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Invalid convergence window: " + window);
+        }
+        this.actionNames = actionNames;
+        this.window = window;
+
+        tdErrorSum = new double[actionNames.length];
+        updateNormSum = new double[actionNames.length];
+        updates = new int[actionNames.length];
+
+        tdErrors = new double[window][actionNames.length];
+        updateNorms = new double[window][actionNames.length];
+        updateCounts = new int[window][actionNames.length];
+    }
+
+    /**
+     * Records an update of the weights of an action
+     *
+     * @param action
+     * @param tdError    delta
+     * @param updateNorm the L2 norm of the change of the weights
+     */
+    public void add(int action, double tdError, double updateNorm) {
+        tdErrorSum[action] += Math.abs(tdError);
+        updateNormSum[action] += updateNorm;
+        updates[action]++;
+    }
+
+    /**
+     * Stores the statistics of the current game and starts a new one
+     */
+    public void concludeGame() {
+        int slot = games % window;
+        for (int a = 0; a < actionNames.length; a++) {
+            tdErrors[slot][a] = updates[a] > 0 ? tdErrorSum[a] / updates[a] : Double.NaN;
+            updateNorms[slot][a] = updates[a] > 0 ? updateNormSum[a] / updates[a] : Double.NaN;
+            updateCounts[slot][a] = updates[a];
+        }
+        games++;
+
+        Arrays.fill(tdErrorSum, 0);
+        Arrays.fill(updateNormSum, 0);
+        Arrays.fill(updates, 0);
+    }
+
+    /**
+     * Returns the number of games concluded
+     *
+     * @return
+     */
+    public int getGames() {
+        return games;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the mean absolute TD error of an action over the last games (NaN
+     * if it was not chosen in them)
+     *
+     * @param action
+     * @return
+     */
+    public double getTdError(int action) {
+        return rollingMean(tdErrors, action);
+    }
+
+    /**
+     * Returns the mean update norm of an action over the last games (NaN if it
+     * was not chosen in them)
+     *
+     * @param action
+     * @return
+     */
+    public double getUpdateNorm(int action) {
+        return rollingMean(updateNorms, action);
+    }
+
+    /**
+     * Returns the number of updates of an action over the last games
+     * 
+     * @param action
+     * @return
+     */
+    public int getUpdates(int action) {
+        int count = 0;
+        for (int g = 0; g < Math.min(games, window); g++) {
+            count += updateCounts[g][action];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the members that were not chosen (hence not updated) in the last
+     * games
+     * 
+     * @return
+     */
+    public List<String> getUnchosenMembers() {
+        List<String> unchosen = new ArrayList<>();
+        for (int a = 0; a < actionNames.length; a++) {
+            if (getUpdates(a) == 0) {
+                unchosen.add(actionNames[a]);
+            }
+        }
+        return unchosen;
+    }
+
+    private double rollingMean(double[][] values, int action) {
+        double sum = 0;
+        int count = 0;
+        for (int g = 0; g < Math.min(games, window); g++) {
+            if (!Double.isNaN(values[g][action])) {
+                sum += values[g][action];
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    /**
+     * Returns whether a full window of games was played and, in each of them, the
+     * TD error and update norm of every member chosen in that game were below
+     * the thresholds. Members never chosen in the window have not converged,
+     * unless requireAllMembers is false, in which case they are ignored (see
+     * {@link #getUnchosenMembers()}).
+     *
+     * @param tdErrorThreshold
+     * @param updateNormThreshold
+     * @param requireAllMembers
+     * @return
+     */
+    public boolean isBelow(double tdErrorThreshold, double updateNormThreshold, boolean requireAllMembers) {
+        if (games < window) {
+            return false;
+        }
+        for (int a = 0; a < actionNames.length; a++) {
+            if (getUpdates(a) == 0) {
+                if (requireAllMembers) {
+                    return false;
+                }
+                continue;
+            }
+            for (int g = 0; g < window; g++) {
+                if (updateCounts[g][a] == 0) {
+                    continue; // not chosen in that game
+                }
+                if (tdErrors[g][a] >= tdErrorThreshold || updateNorms[g][a] >= updateNormThreshold) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int a = 0; a < actionNames.length; a++) {
+            if (a > 0) {
+                description.append(", ");
+            }
+            description.append(String.format("%s: TD error %.4f, update norm %.4f", actionNames[a], getTdError(a),
+                    getUpdateNorm(a)));
+        }
+        return description.toString();
+    }
+
+}
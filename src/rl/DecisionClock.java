@@ -0,0 +1,23 @@
+package rl;
+
+import rts.GameState;
+
+/**
+ * Implemented by AIs that decide at given frames whether or not their units
+ * can act (e.g. MetaBot, which chooses and learns every 'rl.sticky_actions'
+ * frames). With 'runner.skip_idle_frames', the runner still queries both AIs
+ * at the frames where such an AI decides, so skipping does not change the
+ * timing of its decisions.
+ */
+public interface DecisionClock {
+
+    /**
+     * Returns whether the AI must be queried at the current frame of the state
+     * even if none of its units can act. Must not change the AI.
+     *
+     * @param state
+     * @param player
+     * @return
+     */
+    public boolean decidesAt(GameState state, int player);
+}
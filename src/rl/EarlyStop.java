@@ -0,0 +1,120 @@
+package rl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.core.AI;
+import metabot.MetaBot;
+
+/**
+ * Stops training once the learners have converged: when, for every game of
+ * the last 'rl.convergence.window' games, the TD errors and weight update
+ * norms of every MetaBot player (see {@link ConvergenceMonitor}) were below
+ * the thresholds. By default, every portfolio member must have been chosen at
+ * least once in the window, as the ones that were not have not been updated.
+ */
+public class EarlyStop {
+
+    private static final Logger logger = LogManager.getLogger(EarlyStop.class);
+
+    private double tdErrorThreshold;
+    private double updateNormThreshold;
+    private int minGames;
+    private boolean requireAllMembers;
+
+    public EarlyStop(double tdErrorThreshold, double updateNormThreshold, int minGames) {
+        this(tdErrorThreshold, updateNormThreshold, minGames, true);
+    }
+
+    /**
+     * @param tdErrorThreshold
+     * @param updateNormThreshold
+     * @param minGames
+     * @param requireAllMembers   if false, the members not chosen in the window
+     *                            are ignored (and logged)
+     */
+    public EarlyStop(double tdErrorThreshold, double updateNormThreshold, int minGames, boolean requireAllMembers) {
+        this.tdErrorThreshold = tdErrorThreshold;
+        this.updateNormThreshold = updateNormThreshold;
+        this.minGames = minGames;
+        this.requireAllMembers = requireAllMembers;
+    }
+
+    /**
+     * Creates an early stop from 'runner.early_stop.td_error',
+     * 'runner.early_stop.update_norm' (a missing threshold is not checked),
+     * 'runner.early_stop.min_games' and
+     * 'runner.early_stop.require_all_members', or returns null if no threshold
+     * is specified
+     * 
+     * @param config
+     * @return
+     */
+    public static EarlyStop fromConfig(Properties config) {
+        if (!config.containsKey("runner.early_stop.td_error") && !config.containsKey("runner.early_stop.update_norm")) {
+            return null;
+        }
+        return new EarlyStop(
+            Double.parseDouble(config.getProperty("runner.early_stop.td_error", "Infinity")),
+            Double.parseDouble(config.getProperty("runner.early_stop.update_norm", "Infinity")),
+            Integer.parseInt(config.getProperty("runner.early_stop.min_games", "0")),
+            Boolean.parseBoolean(config.getProperty("runner.early_stop.require_all_members", "true"))
+        );
+    }
+
+    /**
+     * Returns whether training can stop after gamesPlayed games, i.e., at least
+     * one of the players is a MetaBot and all MetaBot players converged
+     * 
+     * @param gamesPlayed
+     * @param ais
+     * @return
+     */
+    public boolean shouldStop(int gamesPlayed, AI... ais) {
+        List<ConvergenceMonitor> monitors = new ArrayList<>();
+        for (AI ai : ais) {
+            if (ai instanceof MetaBot) {
+                monitors.add(((MetaBot) ai).getLearningAgent().getConvergence());
+            }
+        }
+        return shouldStop(gamesPlayed, monitors);
+    }
+
+    /**
+     * Returns whether training can stop after gamesPlayed games, i.e., there is
+     * at least one learner and all of them converged
+     * 
+     * @param gamesPlayed
+     * @param monitors the convergence statistics of each learner
+     * @return
+     */
+    public boolean shouldStop(int gamesPlayed, List<ConvergenceMonitor> monitors) {
+        if (gamesPlayed < minGames || monitors.isEmpty()) {
+            return false;
+        }
+
+        for (ConvergenceMonitor convergence : monitors) {
+            if (!convergence.isBelow(tdErrorThreshold, updateNormThreshold, requireAllMembers)) {
+                return false;
+            }
+        }
+
+        for (ConvergenceMonitor convergence : monitors) {
+            if (!convergence.getUnchosenMembers().isEmpty()) {
+                logger.info("Ignored members not chosen in the last {} games: {}", convergence.getWindow(),
+                        convergence.getUnchosenMembers());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TD error < %s and update norm < %s", tdErrorThreshold, updateNormThreshold);
+    }
+
+}
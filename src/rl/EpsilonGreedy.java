@@ -1,9 +1,5 @@
 package rl;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 public class EpsilonGreedy implements ExplorationStrategy {
@@ -22,47 +18,57 @@ public class EpsilonGreedy implements ExplorationStrategy {
     }
 
     @Override
-    public String selectAction(Map<String, Double> actionsValues) {
-        if (random.nextDouble() < epsilon) {
-            // Explore
-            List<String> actions = new ArrayList<String>(actionsValues.keySet());
-            return getRandomAction(actions);
-        } else {
-            // Exploit
-            return getRandomBestAction(actionsValues);
-        }
+    public double getEpsilon() {
+        return epsilon;
     }
 
-    private String getRandomBestAction(Map<String, Double> actionsValues) {
-        List<String> bestActions = getBestActions(actionsValues);
-        return getRandomAction(bestActions);
+    @Override
+    public void restore(double epsilon, Random random) {
+        this.epsilon = epsilon;
+        this.random = random;
+    }
+
+    @Override
+    public boolean explore() {
+        return random.nextDouble() < epsilon;
+    }
+
+    @Override
+    public int randomAction(int numActions) {
+        return random.nextInt(numActions);
     }
 
     /**
-     * Returns a list containing all actions with max value.
-     * @param   actionsValues a map with available actions and their respective values
-     * @return  a list containing the IDs of all actions with max value.
+     * Returns a random action among the ones with max value. Ties are counted in
+     * a first pass and the chosen one is found in a second, so that no list of
+     * best actions is built.
+     * @param   actionValues the value of each action, indexed by action
+     * @return  the index of the chosen action
      */
-    private List<String> getBestActions(Map<String, Double> actionsValues) {
-        double maxValue = Collections.max(actionsValues.values());
+    @Override
+    public int greedyAction(double[] actionValues) {
+        double maxValue = actionValues[0];
+        for (int i = 1; i < actionValues.length; i++) {
+            maxValue = Math.max(maxValue, actionValues[i]);
+        }
 
-        List<String> bestActions = new ArrayList<String>();
-        for (Map.Entry<String, Double> entry : actionsValues.entrySet()) {
-            if (Math.abs(maxValue - entry.getValue()) < PRECISION) {
-                bestActions.add(entry.getKey());
+        int numBest = 0;
+        for (double value : actionValues) {
+            if (Math.abs(maxValue - value) < PRECISION) {
+                numBest++;
             }
         }
-        return bestActions;
-    }
 
-    /**
-     * 
-     * @param actions
-     * @return
-     */
-    private String getRandomAction(List<String> actions) {
-        int randomIndex = random.nextInt(actions.size());
-        return actions.get(randomIndex);
+        int chosen = random.nextInt(numBest);
+        for (int i = 0; i < actionValues.length; i++) {
+            if (Math.abs(maxValue - actionValues[i]) < PRECISION) {
+                if (chosen == 0) {
+                    return i;
+                }
+                chosen--;
+            }
+        }
+        throw new IllegalStateException("No action with max value " + maxValue);
     }
 
     @Override
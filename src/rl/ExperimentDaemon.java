@@ -0,0 +1,161 @@
+package rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps a JVM resident to run experiments from a spool directory, so that jobs
+ * do not pay JVM startup, class loading and JIT warmup each.
+ * 
+ * A job is a file named *.job holding the command line arguments of
+ * {@link Runner}, one per line (so that arguments may contain spaces), e.g.:
+ * 
+ * <pre>
+ * -c
+ * experiments/specific/LightRush/test.properties
+ * -o
+ * results.txt
+ * </pre>
+ * 
+ * Blank lines are ignored. The daemon claims a job by renaming it to *.running,
+ * runs it and renames it to *.done or *.failed. Jobs always run quietly (-q),
+ * as their match counts would be interleaved on the shared output. Each worker
+ * thread runs its jobs with its own copy of the microRTS classes (see
+ * {@link IsolatedJob}), so concurrent jobs do not share state, whereas the
+ * classes stay loaded and compiled from one job of a thread to the next.
+ * 
+ * Jobs left as *.running by a daemon that was killed are renamed back to *.job
+ * when the daemon starts, so they run again from the beginning.
+ * 
+ * The daemon exits after the running jobs finish once a file named 'stop'
+ * appears in the spool directory.
+ */
+public class ExperimentDaemon {
+
+    private static final Logger logger = LogManager.getRootLogger();
+
+    private static final long POLL_INTERVAL = 1000;
+
+    private File spool;
+
+    private ExecutorService pool;
+
+    public ExperimentDaemon(File spool, int threads) {
+        this.spool = spool;
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Polls the spool directory for jobs until the 'stop' file appears
+     * 
+     * @throws InterruptedException
+     */
+    public void serve() throws InterruptedException {
+        spool.mkdirs();
+        requeueInterrupted();
+        logger.info("Waiting for jobs in {}", spool);
+
+        File stop = new File(spool, "stop");
+        while (!stop.exists()) {
+            File[] jobs = spool.listFiles((dir, name) -> name.endsWith(".job"));
+            if (jobs != null) {
+                Arrays.sort(jobs);
+                for (File job : jobs) {
+                    submit(job);
+                }
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+
+        logger.info("Stop requested, waiting for running jobs");
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        stop.delete();
+    }
+
+    /**
+     * Renames the jobs claimed by a previous daemon that did not finish them
+     * back to *.job
+     */
+    private void requeueInterrupted() {
+        File[] interrupted = spool.listFiles((dir, name) -> name.endsWith(".running"));
+        if (interrupted == null) {
+            return;
+        }
+        for (File running : interrupted) {
+            String name = running.getName().substring(0, running.getName().length() - ".running".length());
+            if (running.renameTo(new File(spool, name + ".job"))) {
+                logger.info("Requeued interrupted job {}", name);
+            } else {
+                logger.error("Could not requeue interrupted job {}", name);
+            }
+        }
+    }
+
+    /**
+     * Returns the arguments of a job file (one per line, blank lines ignored),
+     * with -q added if missing
+     * 
+     * @param job
+     * @return
+     * @throws IOException
+     */
+    private static String[] readArguments(File job) throws IOException {
+        List<String> args = new ArrayList<>();
+        for (String line : Files.readAllLines(job.toPath(), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                args.add(line.trim());
+            }
+        }
+        if (!args.contains("-q") && !args.contains("--quiet")) {
+            args.add(0, "-q");
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Claims the job (so that it is not picked again) and schedules it
+     * 
+     * @param job
+     */
+    private void submit(File job) {
+        String name = job.getName().substring(0, job.getName().length() - ".job".length());
+        File running = new File(spool, name + ".running");
+        if (!job.renameTo(running)) {
+            return; // already claimed
+        }
+
+        pool.submit(() -> {
+            String[] args;
+            try {
+                args = readArguments(running);
+            } catch (IOException e) {
+                logger.error("Error while reading job " + name, e);
+                running.renameTo(new File(spool, name + ".failed"));
+                return;
+            }
+
+            boolean success = false;
+            try {
+                logger.info("Starting job {}: {}", name, Arrays.toString(args));
+                IsolatedJob.run(args);
+                success = true;
+                logger.info("Job {} done", name);
+            } catch (Exception e) {
+                logger.error("Job " + name + " failed", e);
+            }
+            running.renameTo(new File(spool, name + (success ? ".done" : ".failed")));
+        });
+    }
+}
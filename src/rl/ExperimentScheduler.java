@@ -0,0 +1,139 @@
+package rl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the sticky actions experiments (formerly launched by scripts/sticky.py)
+ * inside a single JVM. Each (adversary, sticky duration, repetition) job trains
+ * and then tests MetaBot against the adversary, via {@link Runner#run(String[])},
+ * writing its results to
+ * output/adversary/sticky_duration/rep_repetition/{train,test}-results.txt.
+ * 
+ * Jobs run on a pool of worker threads, so that all cores stay busy until the
+ * last job finishes. Each worker runs its jobs with its own copy of the
+ * microRTS classes (see {@link IsolatedJob}), as concurrent games sharing them
+ * may give repeated IDs to units. A failing job is logged and does not affect
+ * the others.
+ */
+public class ExperimentScheduler {
+
+    private static final Logger logger = LogManager.getRootLogger();
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("a").longOpt("adversary").hasArgs()
+                .desc("adversaries (default: all in the experiments directory)").build());
+        options.addOption(Option.builder("s").longOpt("sticky").hasArgs().required()
+                .desc("sticky actions durations").build());
+        options.addOption("i", "iterations", true, "repetitions per adversary and duration (default: 5)");
+        options.addOption("o", "output", true, "output directory (default: experiment-results)");
+        options.addOption("e", "experiments", true, "experiments directory (default: experiments/specific)");
+        options.addOption("t", "test-only", false, "skip training");
+        options.addOption("n", "threads", true, "number of worker threads (default: number of cores)");
+
+        CommandLineParser parser = new DefaultParser();
+        CommandLine cmd = parser.parse(options, args);
+
+        String experimentsDir = cmd.getOptionValue("e", "experiments/specific");
+        String output = cmd.getOptionValue("o", "experiment-results");
+        int iterations = Integer.parseInt(cmd.getOptionValue("i", "5"));
+        boolean testOnly = cmd.hasOption("t");
+        int threads = Integer.parseInt(
+                cmd.getOptionValue("n", "" + Runtime.getRuntime().availableProcessors()));
+
+        List<String> adversaries;
+        if (cmd.hasOption("a")) {
+            adversaries = Arrays.asList(cmd.getOptionValues("a"));
+        } else {
+            adversaries = new ArrayList<>();
+            File[] dirs = new File(experimentsDir).listFiles(File::isDirectory);
+            if (dirs == null) {
+                logger.error("Experiments directory '{}' not found", experimentsDir);
+                return;
+            }
+            for (File dir : dirs) {
+                adversaries.add(dir.getName());
+            }
+        }
+
+        if (iterations <= 0) {
+            logger.error("Invalid number of iterations: {}", iterations);
+            return;
+        }
+
+        Random random = new Random();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> jobs = new ArrayList<>();
+
+        logger.info("Launching experiments.");
+        for (String duration : cmd.getOptionValues("s")) {
+            for (String adversary : adversaries) {
+                for (int rep = 0; rep < iterations; rep++) {
+                    String workingDir = String.format("%s/%s/sticky_%s/rep_%d", output, adversary, duration, rep);
+                    String config = experimentsDir + "/" + adversary;
+                    int trainSeed = random.nextInt(1000001);
+                    int testSeed = random.nextInt(1000001);
+
+                    jobs.add(pool.submit(() -> runJob(config, workingDir, duration, trainSeed, testSeed, testOnly)));
+                }
+            }
+        }
+
+        for (Future<?> job : jobs) {
+            job.get();
+        }
+        pool.shutdown();
+        logger.info("Experiments done.");
+    }
+
+    /**
+     * Trains (unless testOnly) and tests MetaBot (player 2) with the train and
+     * test properties found in config, saving everything to workingDir
+     * @param config directory with train.properties and test.properties
+     * @param workingDir
+     * @param duration sticky actions duration
+     * @param trainSeed
+     * @param testSeed
+     * @param testOnly
+     */
+    private static void runJob(String config, String workingDir, String duration, int trainSeed, int testSeed,
+            boolean testOnly) {
+        new File(workingDir).mkdirs();
+
+        try {
+            if (!testOnly) {
+                logger.info("Starting training in {}", workingDir);
+                IsolatedJob.run(new String[] {
+                    "-q", "-c", config + "/train.properties", "-s2", "" + trainSeed, "-b2",
+                    "-d2", workingDir, "-sd", duration, "-o", workingDir + "/train-results.txt"
+                });
+            }
+
+            logger.info("Starting testing in {}", workingDir);
+            IsolatedJob.run(new String[] {
+                "-q", "-c", config + "/test.properties", "-s2", "" + testSeed,
+                "-bi2", workingDir + "/weights_1.bin", "-d2", workingDir, "-sd", duration,
+                "-o", workingDir + "/test-results.txt"
+            });
+
+            logger.info("Experiment in {} done.", workingDir);
+        } catch (Exception e) {
+            logger.error("Experiment in " + workingDir + " failed", e);
+        }
+    }
+}
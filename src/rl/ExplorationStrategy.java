@@ -1,11 +1,51 @@
 package rl;
 
-import java.util.Map;
+import java.util.Random;
 
 public interface ExplorationStrategy {
 
-    public String selectAction(Map<String, Double> actionsValues);
+    /**
+     * Decides whether the next selection explores. It is called before the
+     * action values are computed, so that exploration steps can skip their
+     * evaluation.
+     * 
+     * @return true if {@link #randomAction(int)} should be used, false if
+     *         {@link #greedyAction(double[])} should be used
+     */
+    public boolean explore();
+
+    /**
+     * Returns a random action index in [0, numActions)
+     * 
+     * @param numActions
+     * @return
+     */
+    public int randomAction(int numActions);
+
+    /**
+     * Returns the index of an action with max value, breaking ties randomly
+     * 
+     * @param actionValues the value of each action, indexed by action
+     * @return
+     */
+    public int greedyAction(double[] actionValues);
 
     public void concludeEpisode();
 
+    /**
+     * Returns the current (decayed) exploration rate
+     * 
+     * @return
+     */
+    public double getEpsilon();
+
+    /**
+     * Restores the exploration rate and the random number generator of a
+     * checkpoint (see {@link TrainingCheckpoint})
+     * 
+     * @param epsilon
+     * @param random
+     */
+    public void restore(double epsilon, Random random);
+
 }
@@ -0,0 +1,120 @@
+package rl;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs {@link Runner#run(String[])} with a copy of the classes of the classpath
+ * (microRTS, MetaBot, the AIs) that belongs to the calling thread. Each worker
+ * thread of the {@link ExperimentScheduler} or {@link ExperimentDaemon} loads
+ * its copy on its first job and reuses it for the following ones, so that
+ * classes stay loaded and compiled, and caches such as the {@link MapCache}
+ * stay warm, across the jobs of that thread.
+ *
+ * microRTS keeps global state in static fields. Notably, unit IDs come from the
+ * unsynchronized counter Unit.next_ID, so games running concurrently with the
+ * same classes lose increments and may give the same ID to two units of the
+ * same game, which breaks everything that looks units up by ID (GameState,
+ * PlayerAction, the feature extractors). Since a thread runs one job at a time,
+ * concurrent jobs never share these classes. They share nothing but the
+ * logging classes and the JDK.
+ *
+ * Between the jobs of a thread, the static state is reset by
+ * {@link #endJob(ClassLoader)}. What remains (the map templates and the unit ID
+ * counter, which only grows) does not affect the results.
+ */
+class IsolatedJob {
+
+    private static final Logger logger = LogManager.getRootLogger();
+
+    /**
+     * Loads the classes of the classpath itself (child-first), except for the
+     * logging API, which is delegated to the caller's loader
+     */
+    private static class JobClassLoader extends URLClassLoader {
+
+        private ClassLoader shared;
+
+        JobClassLoader(URL[] urls, ClassLoader shared) {
+            super(urls, ClassLoader.getPlatformClassLoader());
+            this.shared = shared;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("org.apache.logging.")) {
+                return shared.loadClass(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    /**
+     * The copy of the classes of each worker thread
+     */
+    private static final ThreadLocal<JobClassLoader> loaders = ThreadLocal.withInitial(() -> {
+        try {
+            return new JobClassLoader(classpath(), IsolatedJob.class.getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new UncheckedIOException(e);
+        }
+    });
+
+    /**
+     * Runs the experiment specified by the command line arguments of
+     * {@link Runner} with the classes of the calling thread, returning after the
+     * weights it saves are written
+     *
+     * @param args
+     * @throws Exception whatever the job threw
+     */
+    static void run(String[] args) throws Exception {
+        Thread current = Thread.currentThread();
+        ClassLoader previous = current.getContextClassLoader();
+        JobClassLoader loader = loaders.get();
+
+        current.setContextClassLoader(loader);
+        try {
+            loader.loadClass(Runner.class.getName()).getMethod("run", String[].class).invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            try {
+                endJob(loader);
+            } catch (ReflectiveOperationException e) {
+                logger.error("Error while resetting the classes of " + current.getName(), e);
+            }
+            current.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * Resets the static state a job may leave behind in the classes of loader:
+     * the checkpoints still being written (e.g. if the job failed midway)
+     *
+     * @param loader
+     * @throws ReflectiveOperationException
+     */
+    private static void endJob(ClassLoader loader) throws ReflectiveOperationException {
+        loader.loadClass(WeightCheckpointer.class.getName()).getMethod("awaitPending").invoke(null);
+    }
+
+    private static URL[] classpath() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = new File(entries[i]).toURI().toURL();
+        }
+        return urls;
+    }
+}
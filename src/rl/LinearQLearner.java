@@ -0,0 +1,113 @@
+package rl;
+
+import features.SparseFeatures;
+
+/**
+ * A linear action-value function trained with off-policy Q-learning on
+ * transitions generated by another (behavior) policy. Used by {@link Sarsa} to
+ * train several learners with different hyperparameters on the same games.
+ */
+class LinearQLearner {
+
+    private double alpha;
+    private double alphaDecayRate;
+    private double gamma;
+
+    /**
+     * The weight vectors, one per action, as in {@link Sarsa}
+     */
+    private float[][] weights;
+
+    /**
+     * @param alpha          initial learning rate
+     * @param alphaDecayRate decay rate of alpha, applied at the end of each episode
+     * @param gamma          discount factor
+     */
+    LinearQLearner(double alpha, double alphaDecayRate, double gamma) {
+        this.alpha = alpha;
+        this.alphaDecayRate = alphaDecayRate;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Starts from a copy of the given weights
+     *
+     * @param initialWeights
+     */
+    void initializeWeights(float[][] initialWeights) {
+        weights = new float[initialWeights.length][];
+        for (int a = 0; a < initialWeights.length; a++) {
+            weights[a] = initialWeights[a].clone();
+        }
+    }
+
+    /**
+     * Restores the learning rate and the weights (null if not initialized) of a
+     * checkpoint
+     *
+     * @param alpha
+     * @param weights
+     */
+    void restore(double alpha, float[][] weights) {
+        this.alpha = alpha;
+        this.weights = weights;
+    }
+
+    double getAlpha() {
+        return alpha;
+    }
+
+    boolean isInitialized() {
+        return weights != null;
+    }
+
+    /**
+     * Applies the Q-learning update for the transition (s, a, r, s'), where s'
+     * was reached after the given number of decision intervals: delta = r +
+     * gamma^intervals * max_a' Q(s',a') - Q(s,a)
+     *
+     * @param stateFeatures     features of s
+     * @param choice            a
+     * @param reward            r
+     * @param nextStateFeatures features of s' (null if s' is terminal)
+     * @param intervals
+     */
+    void learn(SparseFeatures stateFeatures, int choice, double reward, SparseFeatures nextStateFeatures,
+            double intervals) {
+        double futureQ = 0;
+        double discount = gamma;
+        if (nextStateFeatures != null) {
+            futureQ = -1;
+            for (int a = 0; a < weights.length; a++) {
+                futureQ = Math.max(futureQ, qValue(nextStateFeatures, a));
+            }
+            discount = Math.pow(gamma, intervals);
+        }
+
+        double delta = reward + discount * futureQ - qValue(stateFeatures, choice);
+        stateFeatures.addTo(weights[choice], alpha * delta);
+
+        if (nextStateFeatures == null) {
+            alpha *= alphaDecayRate;
+        }
+    }
+
+    private double qValue(SparseFeatures features, int choice) {
+        return Math.max(-1, Math.min(1, features.dot(weights[choice])));
+    }
+
+    /**
+     * Returns the weight vectors (not a copy), or null if not initialized
+     *
+     * @return
+     */
+    float[][] getWeights() {
+        return weights;
+    }
+
+    @Override
+    public String toString() {
+        return "alpha=" + alpha + ", alpha decay=" + alphaDecayRate + ", gamma=" + gamma;
+    }
+
+}
@@ -0,0 +1,52 @@
+package rl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Parses each map file once per JVM and hands out fresh clones of it, so that
+ * matches do not reparse the XML map at every start. Safe to use from several
+ * threads.
+ * 
+ * Maps are cached per {@link UnitTypeTable}, because the loaded units refer to
+ * its unit types.
+ */
+public class MapCache {
+
+    /**
+     * The parsed maps (never handed out, only cloned), per unit type table and
+     * map location
+     */
+    private static final Map<UnitTypeTable, Map<String, PhysicalGameState>> templates = Collections
+            .synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Returns a fresh copy of the map at the given location, parsing it only on
+     * the first call
+     * 
+     * @param mapLocation
+     * @param types
+     * @return
+     * @throws Exception if the map cannot be loaded
+     */
+    public static PhysicalGameState load(String mapLocation, UnitTypeTable types) throws Exception {
+        Map<String, PhysicalGameState> maps = templates.computeIfAbsent(types, t -> new ConcurrentHashMap<>());
+
+        PhysicalGameState template = maps.get(mapLocation);
+        if (template == null) {
+            template = PhysicalGameState.load(mapLocation, types);
+
+            // another thread may have parsed it meanwhile; keeps a single template
+            PhysicalGameState previous = maps.putIfAbsent(mapLocation, template);
+            if (previous != null) {
+                template = previous;
+            }
+        }
+        return template.clone();
+    }
+}
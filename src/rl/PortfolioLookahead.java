@@ -0,0 +1,165 @@
+package rl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ai.core.AI;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks what each portfolio member would actually do: simulates every member
+ * for a short horizon against a fixed opponent model, starting from a copy of
+ * the current state, and blends the evaluation of the resulting states with the
+ * learned Q-values.
+ * 
+ * The simulations run one after the other, unless 'rl.lookahead.parallel' is
+ * true, in which case they run simultaneously on a pool dedicated to the
+ * lookahead (not the common fork/join pool, which other components use). Units
+ * produced in simultaneous simulations take their IDs from the unsynchronized
+ * microRTS counter (Unit.next_ID), so they may get repeated IDs and the
+ * evaluations may vary from run to run; the actual game is not affected, as
+ * long as no other game runs in the same class loader meanwhile (e.g. with
+ * MetaBotGymVec stepping environments in parallel).
+ * 
+ * Each simulation uses its own instances of the member and of the opponent
+ * model, as the portfolio AIs (and their path finders) are not thread-safe.
+ */
+public class PortfolioLookahead {
+
+    /**
+     * Runs the parallel simulations of every instance; idle threads terminate
+     * after a while
+     */
+    private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "portfolio-lookahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Number of frames simulated
+     */
+    private int horizon;
+
+    /**
+     * Weight of the simulation in the blended value (the Q-value gets 1 -
+     * weight)
+     */
+    private double weight;
+
+    private String opponentName;
+
+    private boolean parallel;
+
+    private EvaluationFunction evaluation;
+
+    /**
+     * Instances used in the simulations, per portfolio member (created in the
+     * first simulation and reset before each one)
+     */
+    private AI[] members;
+    private AI[] opponents;
+
+    public PortfolioLookahead(Properties config) {
+        horizon = Integer.parseInt(config.getProperty("rl.lookahead.horizon", "0"));
+        weight = Double.parseDouble(config.getProperty("rl.lookahead.weight", "0.5"));
+        opponentName = config.getProperty("rl.lookahead.opponent", "ai.abstraction.LightRush");
+        parallel = Boolean.parseBoolean(config.getProperty("rl.lookahead.parallel", "false"));
+        evaluation = new SimpleSqrtEvaluationFunction3();
+    }
+
+    /**
+     * Replaces each action value with (1 - weight) * value + weight * evaluation,
+     * where evaluation (in [-1, 1]) is the evaluation, for player, of the state
+     * reached by simulating the corresponding portfolio member
+     * 
+     * @param state
+     * @param player
+     * @param actionNames   the portfolio members' names, indexed by action
+     * @param portfolio
+     * @param actionValues  the Q-values, indexed by action
+     */
+    public void blend(GameState state, int player, String[] actionNames, Map<String, AI> portfolio,
+            double[] actionValues) {
+        if (members == null) {
+            members = new AI[actionNames.length];
+            opponents = new AI[actionNames.length];
+        }
+
+        double[] values = new double[actionNames.length];
+        if (parallel) {
+            List<Callable<Double>> simulations = new ArrayList<>(actionNames.length);
+            for (int i = 0; i < actionNames.length; i++) {
+                int index = i;
+                simulations.add(() -> simulate(index, portfolio.get(actionNames[index]), state, player));
+            }
+            try {
+                List<Future<Double>> results = pool.invokeAll(simulations);
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = results.get(i).get();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error while simulating the portfolio", e);
+            }
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = simulate(i, portfolio.get(actionNames[i]), state, player);
+            }
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            actionValues[i] = (1 - weight) * actionValues[i] + weight * values[i];
+        }
+    }
+
+    /**
+     * Simulates the member (as player) against the opponent model for horizon
+     * frames and returns the evaluation of the resulting state
+     * 
+     * @param index  the member's action index
+     * @param member
+     * @param state
+     * @param player
+     * @return
+     */
+    private double simulate(int index, AI member, GameState state, int player) {
+        UnitTypeTable types = state.getUnitTypeTable();
+        try {
+            if (members[index] == null) {
+                members[index] = (AI) member.getClass().getConstructor(UnitTypeTable.class).newInstance(types);
+                opponents[index] = (AI) Class.forName(opponentName).getConstructor(UnitTypeTable.class)
+                        .newInstance(types);
+            }
+            AI simMember = members[index];
+            AI simOpponent = opponents[index];
+            simMember.reset();
+            simOpponent.reset();
+
+            GameState sim = state.clone();
+            int end = sim.getTime() + horizon;
+            boolean gameover = false;
+            while (!gameover && sim.getTime() < end) {
+                PlayerAction memberAction = simMember.getAction(player, sim);
+                PlayerAction opponentAction = simOpponent.getAction(1 - player, sim);
+                sim.issueSafe(memberAction);
+                sim.issueSafe(opponentAction);
+                gameover = sim.cycle();
+            }
+
+            return evaluation.evaluate(player, 1 - player, sim);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while simulating " + member.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package rl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import features.SparseFeatures;
+
+/**
+ * A ring buffer of transitions (s, a, r, s', a'), stored off-heap in a
+ * preallocated direct {@link ByteBuffer}. When full, the oldest transitions are
+ * overwritten.
+ *
+ * Each transition occupies a fixed-size record:
+ * <ol>
+ * <li>a, a', r, discount and the number of active features of s and s' (the
+ * latter is -1 if s' is terminal), 4 bytes each;</li>
+ * <li>the indices and the values of the active features of s, maxActive of
+ * each;</li>
+ * <li>the same for s'.</li>
+ * </ol>
+ */
+public class ReplayBuffer {
+
+    private static final int HEADER_BYTES = 6 * 4;
+
+    private static final int ACTION = 0;
+    private static final int NEXT_ACTION = 4;
+    private static final int REWARD = 8;
+    private static final int DISCOUNT = 12;
+    private static final int STATE_COUNT = 16;
+    private static final int NEXT_COUNT = 20;
+
+    private ByteBuffer buffer;
+
+    private int capacity;
+    private int maxActive;
+    private int stride;
+
+    private int size;
+    private int next;
+
+    /**
+     * @param capacity  the number of transitions held
+     * @param maxActive the maximum number of active features of a state
+     */
+    public ReplayBuffer(int capacity, int maxActive) {
+        if (capacity <= 0 || maxActive <= 0) {
+            throw new IllegalArgumentException("Invalid capacity (" + capacity + ") or maxActive (" + maxActive + ")");
+        }
+
+        long bytes = (long) capacity * (HEADER_BYTES + 16L * maxActive);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Replay buffer of " + bytes + " bytes is too large");
+        }
+
+        this.capacity = capacity;
+        this.maxActive = maxActive;
+        stride = HEADER_BYTES + 16 * maxActive;
+        buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Stores a transition, overwriting the oldest one if the buffer is full.
+     * Returns false (and stores nothing) if a state has more than maxActive
+     * active features.
+     *
+     * @param state      features of s
+     * @param action     a
+     * @param reward     r
+     * @param nextState  features of s' (null if s' is terminal)
+     * @param nextAction a' (ignored if s' is terminal)
+     * @param discount   discount applied to the value of s'
+     * @return
+     */
+    public boolean add(SparseFeatures state, int action, double reward, SparseFeatures nextState, int nextAction,
+            double discount) {
+        if (state.size() > maxActive || (nextState != null && nextState.size() > maxActive)) {
+            return false;
+        }
+
+        int record = next * stride;
+        buffer.putInt(record + ACTION, action);
+        buffer.putInt(record + NEXT_ACTION, nextAction);
+        buffer.putFloat(record + REWARD, (float) reward);
+        buffer.putFloat(record + DISCOUNT, (float) discount);
+        buffer.putInt(record + STATE_COUNT, state.size());
+        buffer.putInt(record + NEXT_COUNT, nextState == null ? -1 : nextState.size());
+
+        write(state, record + HEADER_BYTES);
+        if (nextState != null) {
+            write(nextState, record + HEADER_BYTES + 8 * maxActive);
+        }
+
+        next = (next + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+        return true;
+    }
+
+    private void write(SparseFeatures features, int offset) {
+        int values = offset + 4 * maxActive;
+        for (int i = 0; i < features.size(); i++) {
+            buffer.putInt(offset + 4 * i, features.index(i));
+            buffer.putFloat(values + 4 * i, features.value(i));
+        }
+    }
+
+    private void read(int offset, int count, SparseFeatures out) {
+        out.clear();
+        int values = offset + 4 * maxActive;
+        for (int i = 0; i < count; i++) {
+            out.add(buffer.getInt(offset + 4 * i), buffer.getFloat(values + 4 * i));
+        }
+    }
+
+    /**
+     * Returns the position of a transition chosen uniformly at random
+     *
+     * @param random
+     * @return
+     */
+    public int sample(Random random) {
+        return random.nextInt(size);
+    }
+
+    public int getAction(int i) {
+        return buffer.getInt(i * stride + ACTION);
+    }
+
+    public int getNextAction(int i) {
+        return buffer.getInt(i * stride + NEXT_ACTION);
+    }
+
+    public float getReward(int i) {
+        return buffer.getFloat(i * stride + REWARD);
+    }
+
+    public float getDiscount(int i) {
+        return buffer.getFloat(i * stride + DISCOUNT);
+    }
+
+    public boolean isTerminal(int i) {
+        return buffer.getInt(i * stride + NEXT_COUNT) < 0;
+    }
+
+    /**
+     * Reads the features of s of the i-th transition into out
+     *
+     * @param i
+     * @param out
+     */
+    public void readState(int i, SparseFeatures out) {
+        read(i * stride + HEADER_BYTES, buffer.getInt(i * stride + STATE_COUNT), out);
+    }
+
+    /**
+     * Reads the features of s' of the i-th transition into out (left empty if s'
+     * is terminal)
+     *
+     * @param i
+     * @param out
+     */
+    public void readNextState(int i, SparseFeatures out) {
+        read(i * stride + HEADER_BYTES + 8 * maxActive, Math.max(0, buffer.getInt(i * stride + NEXT_COUNT)), out);
+    }
+
+    /**
+     * Returns the number of transitions held
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+}
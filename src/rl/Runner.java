@@ -3,10 +3,15 @@ package rl;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.commons.cli.CommandLine;
@@ -19,10 +24,9 @@ import org.apache.logging.log4j.Logger;
 import ai.core.AI;
 import config.ConfigManager;
 import metabot.MetaBot;
-import metabot.EpsilonLightRush;
+import players.OpponentFactory;
 import rts.GameSettings;
 import rts.GameState;
-import rts.PartiallyObservableGameState;
 import rts.PhysicalGameState;
 import rts.PlayerAction;
 import rts.Trace;
@@ -44,33 +48,30 @@ public class Runner {
     private static final Logger logger = LogManager.getRootLogger();
 
     public static void main(String[] args) throws Exception {
+        CommandLine cmd = new DefaultParser().parse(buildOptions(), args);
+
+        // stays resident, running the jobs that arrive in the spool directory
+        if (cmd.hasOption("daemon")) {
+            int threads = Integer.parseInt(
+                cmd.getOptionValue("daemonthreads", "" + Runtime.getRuntime().availableProcessors())
+            );
+            new ExperimentDaemon(new File(cmd.getOptionValue("daemon")), threads).serve();
+            return;
+        }
 
-        EpsilonLightRush ep;
-
-        // Argument parser
-        Options options = new Options();
-
-        // Runner command line options
-        options.addOption("c", "config", true, "config file");
-        options.addOption("o", "output", true, "output file");
-
-        // Player 1 command line options
-        options.addOption("s1", "seed1", true, "player 1 seed number");
-        options.addOption("d1", "directory1", true, "player 1 working directory");
-        options.addOption("b1", "binprefix1", false, "player 1 save binary weights");
-        options.addOption("h1", "humanprefix1", false, "player 1 save human weights");
-        options.addOption("bi1", "bininput1", true, "player 1 binary input");
-        options.addOption("sd", "stickyduration", true, "sticky actions duration");
-
-        // Player 2 command line options
-        options.addOption("s2", "seed2", true, "player 2 seed number");
-        options.addOption("d2", "directory2", true, "player 2 working directory");
-        options.addOption("b2", "binprefix2", false, "player 2 save binary weights");
-        options.addOption("h2", "humanprefix2", false, "player 2 save human weights");
-        options.addOption("bi2", "bininput2", true, "player 2 binary input");
+        run(args);
+    }
 
+    /**
+     * Runs the experiment specified by the command line arguments (see
+     * {@link #buildOptions()}). Everything the experiment needs is created here,
+     * so several experiments can run concurrently in the same JVM.
+     * @param args
+     * @throws Exception
+     */
+    public static void run(String[] args) throws Exception {
         CommandLineParser parser = new DefaultParser();
-        CommandLine cmd = parser.parse(options, args);
+        CommandLine cmd = parser.parse(buildOptions(), args);
 
         String configFile;
         if (cmd.hasOption("c")) {
@@ -100,8 +101,29 @@ public class Runner {
         AI ai2 = loadAI(settings.getAI2(), utt, 2, prop, cmd);
 
         int numGames = Integer.parseInt(prop.getProperty("runner.num_games", "1"));
+        boolean skipIdleFrames = Boolean.parseBoolean(prop.getProperty("runner.skip_idle_frames", "false"));
+        Adjudicator adjudicator = Adjudicator.fromConfig(prop);
+        SequentialTest sequentialTest = SequentialTest.fromConfig(prop);
+        EarlyStop earlyStop = EarlyStop.fromConfig(prop);
+
+        // continues an interrupted training run from the checkpoints of the MetaBot players
+        int firstGame = 0;
+        if (cmd.hasOption("resume")) {
+            AI[] ais = { ai1, ai2 };
+            for (int player = 0; player < 2; player++) {
+                if (ais[player] instanceof MetaBot) {
+                    firstGame = Math.max(firstGame, ((MetaBot) ais[player]).resume(player));
+                }
+            }
+            logger.info("Resuming at match {}", firstGame + 1);
+
+            // the matches after the checkpoint are played again
+            if (prop.containsKey("runner.output")) {
+                resumeSummary(prop.getProperty("runner.output"), firstGame, sequentialTest);
+            }
+        }
 
-        for (int i = 0; i < numGames; i++) {
+        for (int i = firstGame; i < numGames; i++) {
 
             // determines the trace output file. It is either null or the one calculated from the specified prefix
             String traceOutput = null;
@@ -114,17 +136,26 @@ public class Runner {
             }
 
             Date begin = new Date(System.currentTimeMillis());
-            int result = headlessMatch(ai1, ai2, settings, utt, traceOutput);
+            int result = headlessMatch(ai1, ai2, settings, utt, traceOutput, skipIdleFrames, adjudicator);
             Date end = new Date(System.currentTimeMillis());
 
-            System.out.print(String.format("\rMatch %8d finished with result %3d.", i+1, result));
+            if (!cmd.hasOption("q")) {
+                System.out.print(String.format("\rMatch %8d finished with result %3d.", i+1, result));
+            }
             // logger.info(String.format("Match %8d finished.", i+1));
 
             long duration = end.getTime() - begin.getTime();
 
             if (prop.containsKey("runner.output")) {
                 try {
-                    outputSummary(prop.getProperty("runner.output"), result, duration, begin, end);
+                    if (adjudicator == null) {
+                        outputSummary(prop.getProperty("runner.output"), result, duration, begin, end);
+                    } else {
+                        outputSummary(
+                            prop.getProperty("runner.output"), result, duration, begin, end, 
+                            adjudicator.isAdjudicated()
+                        );
+                    }
                 } catch(IOException ioe) {
                     logger.error("Error while trying to write summary to '" + prop.getProperty("runner.output") + "'", ioe);
                 }
@@ -132,10 +163,82 @@ public class Runner {
 
             ai1.reset();
             ai2.reset();
+
+            // stops once the win rate is known to the desired precision
+            if (sequentialTest != null) {
+                sequentialTest.add(result);
+                if (sequentialTest.isSettled()) {
+                    numGames = i + 1;
+                    break;
+                }
+            }
+
+            // stops once the weights stopped moving
+            if (earlyStop != null && earlyStop.shouldStop(i + 1, ai1, ai2)) {
+                logger.info("Converged after {} matches ({})", i + 1, earlyStop);
+                for (AI ai : new AI[] { ai1, ai2 }) {
+                    if (ai instanceof MetaBot) {
+                        logger.info("{}", ((MetaBot) ai).getLearningAgent().getConvergence());
+                    }
+                }
+                numGames = i + 1;
+                break;
+            }
+        }
+
+        // saves the weights of the games played since the last checkpoint and waits for the writer
+        for (AI ai : new AI[] { ai1, ai2 }) {
+            if (ai instanceof MetaBot) {
+                try {
+                    ((MetaBot) ai).checkpoint();
+                } catch (IOException ioe) {
+                    logger.error("Error while saving the weights of " + ai, ioe);
+                }
+                ((MetaBot) ai).closeWeightHistory();
+            }
+        }
+        WeightCheckpointer.awaitPending();
+
+        if (!cmd.hasOption("q")) {
+            System.out.println(); // adds a trailing \n to the match count written in the loop.
+        }
+        logger.info("Executed " + (numGames - firstGame) + " matches.");
+        if (sequentialTest != null) {
+            logger.info("Player {}: {}", prop.getProperty("runner.sequential.player", "2"), sequentialTest);
         }
+    }
+
+    /**
+     * Returns the command line options accepted by {@link #run(String[])}
+     * @return
+     */
+    public static Options buildOptions() {
+        Options options = new Options();
+
+        // Runner command line options
+        options.addOption("c", "config", true, "config file");
+        options.addOption("o", "output", true, "output file");
+        options.addOption("q", "quiet", false, "do not print the match count");
+        options.addOption(null, "resume", false, "resume training from the MetaBot checkpoints");
+        options.addOption(null, "daemon", true, "run the jobs of this spool directory (see ExperimentDaemon)");
+        options.addOption(null, "daemonthreads", true, "number of jobs the daemon runs in parallel");
+
+        // Player 1 command line options
+        options.addOption("s1", "seed1", true, "player 1 seed number");
+        options.addOption("d1", "directory1", true, "player 1 working directory");
+        options.addOption("b1", "binprefix1", false, "player 1 save binary weights");
+        options.addOption("h1", "humanprefix1", false, "player 1 save human weights");
+        options.addOption("bi1", "bininput1", true, "player 1 binary input");
+        options.addOption("sd", "stickyduration", true, "sticky actions duration");
+
+        // Player 2 command line options
+        options.addOption("s2", "seed2", true, "player 2 seed number");
+        options.addOption("d2", "directory2", true, "player 2 working directory");
+        options.addOption("b2", "binprefix2", false, "player 2 save binary weights");
+        options.addOption("h2", "humanprefix2", false, "player 2 save human weights");
+        options.addOption("bi2", "bininput2", true, "player 2 binary input");
 
-        System.out.println(); // adds a trailing \n to the match count written in the loop.
-        logger.info("Executed " + numGames + " matches.");
+        return options;
     }
 
     /**
@@ -156,10 +259,54 @@ public class Runner {
             UnitTypeTable types,
             String traceOutput
             ) throws Exception {
+        return headlessMatch(ai1, ai2, config, types, traceOutput, false, null);
+    }
+
+    /**
+     * Returns whether the AI decides at the current frame of the state (see
+     * {@link DecisionClock})
+     * @param ai
+     * @param state
+     * @param player
+     * @return
+     */
+    private static boolean decidesAt(AI ai, GameState state, int player) {
+        return ai instanceof DecisionClock && ((DecisionClock) ai).decidesAt(state, player);
+    }
+
+    /**
+     * Runs a match between two AIs with the specified settings, without the GUI.
+     * Saves the trace to re-play the match if traceOutput is not null.
+     * If skipIdleFrames is true, frames where no unit of either player can 
+     * receive an action are simulated without querying the AIs (and without 
+     * fog of war or trace entries), as the AIs could not issue anything in them,
+     * except for the frames where an AI implementing {@link DecisionClock}
+     * decides, so that its decisions keep their timing.
+     * If adjudicator is not null, the match ends as soon as it adjudicates 
+     * the match, whose winner is then reported to the AIs and returned
+     * @param ai1
+     * @param ai2
+     * @param config
+     * @param types
+     * @param traceOutput
+     * @param skipIdleFrames
+     * @param adjudicator
+     * @return
+     * @throws Exception
+     */
+    public static int headlessMatch(
+            AI ai1,
+            AI ai2,
+            GameSettings config,
+            UnitTypeTable types,
+            String traceOutput,
+            boolean skipIdleFrames,
+            Adjudicator adjudicator
+            ) throws Exception {
         PhysicalGameState pgs;
         Logger logger = LogManager.getRootLogger();
         try {
-            pgs = PhysicalGameState.load(config.getMapLocation(), types);
+            pgs = MapCache.load(config.getMapLocation(), types);
         } catch (Exception e) {
             logger.error("Error while loading map from file: " + config.getMapLocation(), e);
             //e.printStackTrace();
@@ -172,18 +319,41 @@ public class Runner {
         // creates the trace logger
         Trace replay = new Trace(types);
 
+        // keeps the players' visibility up to date across frames
+        VisibilityTracker visibility = null;
+        if (config.isPartiallyObservable()) {
+            visibility = new VisibilityTracker(pgs);
+        }
+
+        if (adjudicator != null) {
+            adjudicator.reset();
+        }
+
         boolean gameover = false;
 
         while (!gameover && state.getTime() < config.getMaxCycles()) {
 
+            // ends the match if it has been decided
+            if (adjudicator != null && adjudicator.update(state)) {
+                break;
+            }
+
+            // fast-forwards while all units are busy (the AIs have nothing to decide)
+            if (skipIdleFrames && !state.canExecuteAnyAction(0) && !state.canExecuteAnyAction(1)
+                    && !decidesAt(ai1, state, 0) && !decidesAt(ai2, state, 1)) {
+                gameover = state.cycle();
+                continue;
+            }
+
             // initializes state equally for the players
             GameState player1State = state;
             GameState player2State = state;
 
             // places the fog of war if the state is partially observable
-            if (config.isPartiallyObservable()) {
-                player1State = new PartiallyObservableGameState(state, 0);
-                player2State = new PartiallyObservableGameState(state, 1);
+            if (visibility != null) {
+                visibility.update(state);
+                player1State = visibility.observe(state, 0);
+                player2State = visibility.observe(state, 1);
             }
 
             // retrieves the players' actions
@@ -208,8 +378,13 @@ public class Runner {
             // runs one cycle of the game
             gameover = state.cycle();
         }
-        ai1.gameOver(state.winner());
-        ai2.gameOver(state.winner());
+        int winner = state.winner();
+        if (adjudicator != null && adjudicator.isAdjudicated()) {
+            winner = adjudicator.winner();
+        }
+
+        ai1.gameOver(winner);
+        ai2.gameOver(winner);
 
         //traces the final state
         replay.addEntry(new TraceEntry(state.getPhysicalGameState().clone(), state.getTime()));
@@ -232,7 +407,7 @@ public class Runner {
     		
 		}
 
-        return state.winner();
+        return winner;
     }
 
     public static void outputSummary(
@@ -242,6 +417,34 @@ public class Runner {
             Date start,
             Date finish
             ) throws IOException {
+        outputSummary(path, String.format("%d,%d,%s,%s\n", result, duration, start, finish), 
+            "#result,duration(ms),initial_time,final_time\n");
+    }
+
+    /**
+     * Writes the summary with an extra column telling whether the match was 
+     * ended by the {@link Adjudicator}
+     * @param path
+     * @param result
+     * @param duration
+     * @param start
+     * @param finish
+     * @param adjudicated
+     * @throws IOException
+     */
+    public static void outputSummary(
+            String path,
+            int result,
+            long duration,
+            Date start,
+            Date finish,
+            boolean adjudicated
+            ) throws IOException {
+        outputSummary(path, String.format("%d,%d,%s,%s,%d\n", result, duration, start, finish, adjudicated ? 1 : 0),
+            "#result,duration(ms),initial_time,final_time,adjudicated\n");
+    }
+
+    private static void outputSummary(String path, String line, String header) throws IOException {
         File f = new File(path);
         FileWriter writer;
         Logger logger = LogManager.getRootLogger();
@@ -250,18 +453,56 @@ public class Runner {
         if (!f.exists()) { // creates a new file and writes the header
             logger.debug("File didn't exist, creating and writing header");
             writer = new FileWriter(f, false); //must be after the test, because it creates the file upon instantiation
-            writer.write("#result,duration(ms),initial_time,final_time\n");
+            writer.write(header);
             writer.close();
         }
 
         // appends one line with each weight value separated by a comma
         writer = new FileWriter(f, true);
-        writer.write(String.format("%d,%d,%s,%s\n", result, duration, start, finish));
+        writer.write(line);
         logger.debug("Successfully wrote to {}", path);
 
         writer.close();
     }
 
+    /**
+     * Keeps the header and the lines of the first matches of the summary written
+     * by {@link #outputSummary}, discarding the ones of the matches played after
+     * the checkpoint a run is resumed from. The results kept are tallied by the
+     * sequential test (if not null), as if the run had not stopped.
+     * @param path
+     * @param matches the number of matches to keep
+     * @param sequentialTest
+     * @throws IOException
+     */
+    public static void resumeSummary(String path, int matches, SequentialTest sequentialTest) throws IOException {
+        File f = new File(path);
+        if (!f.exists()) {
+            return;
+        }
+
+        List<String> kept = new ArrayList<>();
+        int results = 0;
+        for (String line : Files.readAllLines(f.toPath())) {
+            if (line.startsWith("#")) {
+                kept.add(line);
+            } else if (!line.isEmpty() && results < matches) {
+                kept.add(line);
+                results++;
+                if (sequentialTest != null) {
+                    sequentialTest.add(Integer.parseInt(line.substring(0, line.indexOf(','))));
+                }
+            }
+        }
+        if (results < matches) {
+            logger.warn("{} has only {} of the {} matches before the checkpoint", path, results, matches);
+        }
+
+        Path temp = Paths.get(path + ".tmp");
+        Files.write(temp, kept);
+        Files.move(temp, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
     /**
      * Loads an {@link AI} according to its name, using the provided UnitTypeTable.
      * If the AI is {@link MetaBot}, loads it with the configuration file specified in
@@ -360,9 +601,8 @@ public class Runner {
                 ai = new MetaBot(utt);
             }
 
-        } else { // (default) loads the AI according to its name
-            Constructor<?> cons1 = Class.forName(aiName).getConstructor(UnitTypeTable.class);
-            ai = (AI)cons1.newInstance(utt);
+        } else { // (default) loads the AI according to its name (and the opponent budget settings)
+            ai = OpponentFactory.create(aiName, utt, config);
         }
         return ai;
     }
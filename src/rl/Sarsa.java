@@ -1,23 +1,26 @@
 package rl;
 
-import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
-import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import ai.core.AI;
 import features.Feature;
 import features.FeatureExtractor;
-import features.QuadrantModelFeatureExtractor;
+import features.SparseFeatures;
 import rts.GameState;
 
 /**
@@ -34,12 +37,6 @@ public class Sarsa {
      */
     Random random;
 
-    /**
-     * For feature calculation, the map will be divided in quadrantDivision x
-     * quadrantDivision
-     */
-    private int quadrantDivision;
-
     /**
      * Learning rate
      */
@@ -61,6 +58,7 @@ public class Sarsa {
     private double lambda;
 
     // private final static Logger logger = Logger.getLogger(Sarsa.class.getName());
+    private static final Logger logger = LogManager.getRootLogger();
 
     /**
      * Will return the feature values according to state
@@ -74,11 +72,21 @@ public class Sarsa {
     AI nextChoice;
 
     /**
-     * The weight 'vector' is the 'internal' Map from string (feature name) to float
-     * (weight value) There's a weight vector per AI, hence the map from string (AI
-     * name) to weight vectors
+     * The weight vectors, one per AI (indexed as actionNames), with one weight per
+     * feature (indexed as featureNames)
+     */
+    private float[][] weights;
+
+    /**
+     * The feature names, in the order of the extractor's sparse feature indices
      */
-    private Map<String, Map<String, Float>> weights;
+    private List<String> featureNames;
+
+    /**
+     * Weights read by {@link #loadBin(String)} before the feature names were
+     * known; they are converted into the weight vectors on the first frame
+     */
+    private Map<String, Map<String, Float>> loadedWeights;
 
     /**
      * An array of AI's, which are used as 'sub-bots' to play the game. In our
@@ -86,10 +94,55 @@ public class Sarsa {
      */
     private Map<String, AI> portfolio;
 
+    /**
+     * The portfolio members' names, indexed by action (as seen by the
+     * exploration strategy)
+     */
+    private String[] actionNames;
+
+    /**
+     * Buffer for the Q-values of the actions, indexed as actionNames
+     */
+    private double[] actionValues;
+
     private String weightInitMethod;
 
     private ExplorationStrategy explorationStrategy;
 
+    /**
+     * Simulates the portfolio members to refine the Q-values when acting
+     * greedily (null if 'rl.lookahead.horizon' is not positive)
+     */
+    private PortfolioLookahead lookahead;
+
+    // BEGIN -- experience replay (disabled if 'rl.replay.capacity' is not positive)
+    private ReplayBuffer replay;
+    private int replayCapacity;
+    private int replayMaxActive;
+    private int replayBatchSize;
+    private int replayMinSize;
+    private int replayInterval;
+    private boolean replayQLearning;
+    private Random replayRandom;
+    private int transitionsSinceReplay;
+    private int droppedTransitions;
+    private SparseFeatures[] batchStates;
+    private SparseFeatures replayNextState;
+    private int[] batchActions;
+    private double[] batchDeltas;
+    // END -- experience replay
+
+    /**
+     * Off-policy learners trained on the transitions of this agent (see
+     * 'rl.fanout.*'); empty if none is configured
+     */
+    private LinearQLearner[] fanOut;
+
+    /**
+     * TD errors and update norms of the last games (see 'rl.convergence.window')
+     */
+    private ConvergenceMonitor convergence;
+
     /**
      * Loads the parameters from a specific Properties object
      * 
@@ -110,43 +163,185 @@ public class Sarsa {
 
         lambda = Double.parseDouble(config.getProperty("rl.lambda", "0.0"));
 
-        quadrantDivision = Integer.parseInt(config.getProperty("rl.feature.extractor.quadrant_division", "3"));
-
         weightInitMethod = config.getProperty("rl.weights.init_method", "fixed_interval");
 
-        // if we want to use a different featureExtractor, must customize this call
-        featureExtractor = new QuadrantModelFeatureExtractor(quadrantDivision);
+        // the extractor is chosen by 'rl.feature.extractor'
+        featureExtractor = FeatureExtractor.fromConfig(config);
+
+        if (Integer.parseInt(config.getProperty("rl.lookahead.horizon", "0")) > 0) {
+            lookahead = new PortfolioLookahead(config);
+        }
+
+        fanOut = createFanOut(config);
+
+        // the replay buffer is allocated with the weights, as its records depend on the number of features
+        replayCapacity = Integer.parseInt(config.getProperty("rl.replay.capacity", "0"));
+        if (replayCapacity > 0) {
+            replayBatchSize = Integer.parseInt(config.getProperty("rl.replay.batch_size", "32"));
+            replayMinSize = Integer.parseInt(config.getProperty("rl.replay.min_size", "" + replayBatchSize));
+            replayInterval = Integer.parseInt(config.getProperty("rl.replay.update_interval", "1"));
+            replayMaxActive = Integer.parseInt(config.getProperty("rl.replay.max_active", "256"));
+            if (replayMaxActive <= 0) {
+                throw new RuntimeException("Invalid rl.replay.max_active: " + replayMaxActive);
+            }
+
+            String target = config.getProperty("rl.replay.target", "sarsa");
+            if (!target.equals("sarsa") && !target.equals("q_learning")) {
+                throw new RuntimeException("Invalid replay target: " + target);
+            }
+            replayQLearning = target.equals("q_learning");
+            replayRandom = new Random(random.nextLong());
+
+            batchStates = new SparseFeatures[replayBatchSize];
+            for (int b = 0; b < replayBatchSize; b++) {
+                batchStates[b] = new SparseFeatures();
+            }
+            replayNextState = new SparseFeatures();
+            batchActions = new int[replayBatchSize];
+            batchDeltas = new double[replayBatchSize];
+        }
 
         // weights are initialized in the first call to {@link #getAction} because we
         // require the game map
         weights = null;
 
         this.portfolio = portfolio;
+        actionNames = portfolio.keySet().toArray(new String[0]);
+        actionValues = new double[actionNames.length];
+
+        convergence = new ConvergenceMonitor(actionNames,
+                Integer.parseInt(config.getProperty("rl.convergence.window", "20")));
     }
 
     /**
      * Initializes the weight vector (to be called at the first game frame) Requires
      * the game state because some features depend on map size
      * 
-     * @param gs
+     * @param featureNames
+     * @param min
+     * @param max
      */
-    public void initializeWeights(Set<String> aiNames, List<String> featureNames, float min, float max) {
+    public void initializeWeights(List<String> featureNames, float min, float max) {
         if (min > max) {
             throw new RuntimeException("Weights min (" + min + ") greater than max (" + max + ")");
         }
 
         float range = max - min;
 
-        weights = new HashMap<>();
-        for (String ai : aiNames) {
-            Map<String, Float> aiWeights = new HashMap<>();
+        this.featureNames = featureNames;
+        weights = new float[actionNames.length][featureNames.size()];
+        for (int a = 0; a < actionNames.length; a++) {
+            for (int f = 0; f < featureNames.size(); f++) {
+                weights[a][f] = random.nextFloat() * range + min;
+            }
+        }
+    }
 
-            for (String feature : featureNames) {
-                aiWeights.put(feature, random.nextFloat() * range + min);
+    /**
+     * Creates one off-policy learner per value of the comma-separated lists
+     * 'rl.fanout.alpha.initial', 'rl.fanout.alpha.decay' and 'rl.fanout.gamma'.
+     * The lists must have the same length, except for lists with a single value
+     * (shared by all learners) and missing lists (the value of this agent is
+     * used).
+     * 
+     * @param config
+     * @return
+     */
+    private LinearQLearner[] createFanOut(Properties config) {
+        String[][] lists = new String[3][];
+        String[] keys = { "rl.fanout.alpha.initial", "rl.fanout.alpha.decay", "rl.fanout.gamma" };
+        double[] defaults = { alpha, alphaDecayRate, gamma };
+
+        int count = 0;
+        for (int k = 0; k < keys.length; k++) {
+            if (config.containsKey(keys[k])) {
+                lists[k] = config.getProperty(keys[k]).split(",");
+                count = Math.max(count, lists[k].length);
             }
+        }
 
-            weights.put(ai, aiWeights);
+        for (int k = 0; k < keys.length; k++) {
+            if (lists[k] != null && lists[k].length != 1 && lists[k].length != count) {
+                throw new RuntimeException(
+                        keys[k] + " has " + lists[k].length + " values, but " + count + " learners were given");
+            }
+        }
+
+        LinearQLearner[] learners = new LinearQLearner[count];
+        for (int i = 0; i < count; i++) {
+            double[] values = new double[keys.length];
+            for (int k = 0; k < keys.length; k++) {
+                if (lists[k] == null) {
+                    values[k] = defaults[k];
+                } else {
+                    values[k] = Double.parseDouble(lists[k][lists[k].length == 1 ? 0 : i].trim());
+                }
+            }
+            learners[i] = new LinearQLearner(values[0], values[1], values[2]);
         }
+        return learners;
+    }
+
+    /**
+     * Converts weights in the (serialized) map format into the weight vectors
+     * 
+     * @param featureNames
+     * @param weightMap
+     */
+    private void initializeWeights(List<String> featureNames, Map<String, Map<String, Float>> weightMap) {
+        this.featureNames = featureNames;
+        weights = new float[actionNames.length][featureNames.size()];
+        for (int a = 0; a < actionNames.length; a++) {
+            Map<String, Float> aiWeights = weightMap.get(actionNames[a]);
+            if (aiWeights == null) {
+                throw new RuntimeException("No weights for " + actionNames[a]);
+            }
+            for (int f = 0; f < featureNames.size(); f++) {
+                Float value = aiWeights.get(featureNames.get(f));
+                if (value == null) {
+                    throw new RuntimeException("No weight of " + actionNames[a] + " for " + featureNames.get(f));
+                }
+                weights[a][f] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns weight vectors (indexed as actionNames and featureNames) in the map
+     * format, from AI name to a map from feature name to weight
+     * 
+     * @param actionNames
+     * @param featureNames
+     * @param weights
+     * @return
+     */
+    static Map<String, Map<String, Float>> toWeightMap(String[] actionNames, List<String> featureNames,
+            float[][] weights) {
+        Map<String, Map<String, Float>> weightMap = new HashMap<>();
+        for (int a = 0; a < actionNames.length; a++) {
+            Map<String, Float> aiWeights = new HashMap<>();
+            for (int f = 0; f < featureNames.size(); f++) {
+                aiWeights.put(featureNames.get(f), weights[a][f]);
+            }
+            weightMap.put(actionNames[a], aiWeights);
+        }
+        return weightMap;
+    }
+
+    /**
+     * Returns the index of a portfolio member in actionNames
+     * 
+     * @param choice
+     * @return
+     */
+    private int actionIndex(AI choice) {
+        String name = choice.getClass().getSimpleName();
+        for (int a = 0; a < actionNames.length; a++) {
+            if (actionNames[a].equals(name)) {
+                return a;
+            }
+        }
+        throw new RuntimeException("AI not in portfolio: " + name);
     }
 
     /**
@@ -180,6 +375,10 @@ public class Sarsa {
      */
     private AI epsilonGreedy(GameState state, int player) {
         // initializes weights on first frame
+        if (weights == null && loadedWeights != null) {
+            initializeWeights(featureExtractor.getFeatureNames(state), loadedWeights);
+            loadedWeights = null;
+        }
         if (weights == null) {
             float weightsMin;
             float weightsMax;
@@ -199,17 +398,38 @@ public class Sarsa {
                     throw new RuntimeException("Invalid weight initialization method: " + weightInitMethod);
             }
 
-            initializeWeights(portfolio.keySet(), featureExtractor.getFeatureNames(state), weightsMin, weightsMax);
+            initializeWeights(featureExtractor.getFeatureNames(state), weightsMin, weightsMax);
         }
 
+        for (LinearQLearner learner : fanOut) {
+            if (!learner.isInitialized()) {
+                learner.initializeWeights(weights);
+            }
+        }
 
-        // will choose the action for this state
+        if (replayCapacity > 0 && replay == null) {
+            // slots only need to hold the active features of a state
+            int maxActive = Math.min(replayMaxActive, featureNames.size());
+            replay = new ReplayBuffer(replayCapacity, maxActive);
+            logger.debug("Replay buffer of {} transitions with up to {} active features per state",
+                    replayCapacity, maxActive);
+        }
 
-        Map<String, Double> qValues = getQValues(state, player);
+        // will choose the action for this state (Q-values are only needed when exploiting)
+        if (explorationStrategy.explore()) {
+            return portfolio.get(actionNames[explorationStrategy.randomAction(actionNames.length)]);
+        }
 
-        String choiceName = explorationStrategy.selectAction(qValues);
+        SparseFeatures stateFeatures = featureExtractor.getSparseFeatures(state, player);
+        for (int i = 0; i < actionNames.length; i++) {
+            actionValues[i] = qValue(stateFeatures, i);
+        }
+
+        if (lookahead != null) {
+            lookahead.blend(state, player, actionNames, portfolio, actionValues);
+        }
 
-        return portfolio.get(choiceName);
+        return portfolio.get(actionNames[explorationStrategy.greedyAction(actionValues)]);
     }
 
     /**
@@ -224,24 +444,81 @@ public class Sarsa {
      * @param player    required to extract the features of this state
      */
     public void learn(GameState state, AI choice, double reward, GameState nextState, boolean done, int player) {
+        learn(state, choice, reward, nextState, done, player, 1);
+    }
+
+    /**
+     * Receives an experience tuple (s, a, r, s') where s' was reached after the
+     * given number of decision intervals, and updates the action-value function.
+     * Future values are discounted by gamma^intervals (so that choices that last
+     * longer are discounted accordingly). As a side effect of Sarsa, the next
+     * action a' is chosen here.
+     * 
+     * @param state     s
+     * @param choice    a
+     * @param reward    r
+     * @param nextState s'
+     * @param done      whether this is the end of the episode
+     * @param player    required to extract the features of this state
+     * @param intervals time between s and s', in decision intervals
+     */
+    public void learn(GameState state, AI choice, double reward, GameState nextState, boolean done, int player,
+            double intervals) {
 
         // ensures all variables are valid (they won't be in the initial state)
         if (state == null || choice == null) {
             return;
         }
 
+        SparseFeatures stateFeatures;
+        SparseFeatures nextStateFeatures = null;
+        int nextAction = -1;
+        double discount = gamma;
+
         if (!done) {
             // determines the next choice
             nextChoice = epsilonGreedy(nextState, player);
 
-            // applies the update rule with s, a, r, s', a'
-            sarsaLearning(state, choice.getClass().getSimpleName(), reward, done, nextState,
-                    nextChoice.getClass().getSimpleName(), player);
+            stateFeatures = featureExtractor.getSparseFeatures(state, player);
+            nextStateFeatures = featureExtractor.getSparseFeatures(nextState, player);
+            nextAction = actionIndex(nextChoice);
+            discount = Math.pow(gamma, intervals);
         } else {
-            sarsaLearning(state, choice.getClass().getSimpleName(), reward, done, null, null, player);
+            stateFeatures = featureExtractor.getSparseFeatures(state, player);
+        }
+
+        // applies the update rule with s, a, r, s', a'
+        sarsaLearning(stateFeatures, actionIndex(choice), reward, nextStateFeatures, nextAction, discount);
+
+        // the off-policy learners receive the same transition
+        if (fanOut.length > 0) {
+            final SparseFeatures s = stateFeatures;
+            final SparseFeatures next = nextStateFeatures;
+            final int a = actionIndex(choice);
+            IntStream.range(0, fanOut.length).parallel()
+                    .forEach(i -> fanOut[i].learn(s, a, reward, next, intervals));
+        }
+
+        if (replay != null) {
+            if (!replay.add(stateFeatures, actionIndex(choice), reward, nextStateFeatures, nextAction, discount)
+                    && droppedTransitions++ == 0) {
+                logger.warn("Transitions with more active features than rl.replay.max_active ({}) are not"
+                        + " replayed (their count is logged at the end of each game)", replayMaxActive);
+            }
+            if (++transitionsSinceReplay >= replayInterval && replay.size() >= replayMinSize) {
+                transitionsSinceReplay = 0;
+                replayMinibatch();
+            }
         }
 
         if (done) {
+            convergence.concludeGame();
+
+            if (droppedTransitions > 0) {
+                logger.info("{} transitions not replayed so far (more than {} active features)",
+                        droppedTransitions, replayMaxActive);
+            }
+
             // decays alpha and epsilon
             alpha *= alphaDecayRate;
             explorationStrategy.concludeEpisode();
@@ -252,70 +529,96 @@ public class Sarsa {
     /**
      * Updates the weight vector of the current action (choice) using the Sarsa
      * rule: delta = r + gamma * Q(s',a') - Q(s,a) w_i <- w_i + alpha*delta*f_i
-     * (where w_i is the i-th weight and f_i the i-th feature)
+     * (where w_i is the i-th weight and f_i the i-th feature). Only the active
+     * (non-zero) features are visited, as the others leave their weights intact.
      * 
-     * @param state      s in Sarsa equation
-     * @param choice     a in Sarsa equation
-     * @param reward     r in Sarsa equation
-     * @param nextState  s' in Sarsa equation
-     * @param nextChoice a' in Sarsa equation
-     * @param player     required to extract the features for the states
+     * @param stateFeatures     features of s in Sarsa equation
+     * @param choice            a in Sarsa equation
+     * @param reward            r in Sarsa equation
+     * @param nextStateFeatures features of s' in Sarsa equation (null if s' is
+     *                          terminal)
+     * @param nextChoice        a' in Sarsa equation
+     * @param discount          gamma in Sarsa equation (already raised to the
+     *                          number of decision intervals between s and s')
      */
-    private void sarsaLearning(GameState state, String choice, double reward, boolean done, GameState nextState,
-            String nextChoice, int player) {
-        // checks if s' and a' are ok (s and a will always be ok, we hope)
-        // if(nextState == null || nextChoice == null) return;
-
-        Map<String, Feature> stateFeatures = featureExtractor.getFeatures(state, player);
-
+    private void sarsaLearning(SparseFeatures stateFeatures, int choice, double reward,
+            SparseFeatures nextStateFeatures, int nextChoice, double discount) {
         double futureQ;
-        if (done) {
+        if (nextStateFeatures == null) {
             futureQ = 0;
         } else {
-            Map<String, Feature> nextStateFeatures = featureExtractor.getFeatures(nextState, player);
-            futureQ = Math.max(-1, Math.min(1, qValue(nextStateFeatures, nextChoice)));
+            futureQ = qValue(nextStateFeatures, nextChoice);
         }
 
         double q = qValue(stateFeatures, choice);
 
         // the temporal-difference error (delta in Sarsa equation)
-        double delta = reward + gamma * futureQ - q;
+        double delta = reward + discount * futureQ - q;
 
-        for (String featureName : stateFeatures.keySet()) {
-            // retrieves the weight value, updates it and stores the updated value
-            double oldWeightValue = weights.get(choice).get(featureName);
-            double newWeightValue = oldWeightValue + alpha * delta * stateFeatures.get(featureName).getValue();
-            weights.get(choice).put(featureName, (float) newWeightValue);
-        }
+        // w_i <- w_i + alpha * delta * f_i for the active features
+        stateFeatures.addTo(weights[choice], alpha * delta);
+
+        convergence.add(choice, delta, Math.abs(alpha * delta) * stateFeatures.norm());
     }
 
     /**
-     * Returns the dot product of features and their respective weights
-     * 
-     * @param features
-     * @param weights
-     * @return
+     * Samples a minibatch of 'rl.replay.batch_size' transitions from the replay
+     * buffer, computes all their TD errors with the current weights and then
+     * applies the mean of their updates. The target uses the stored a' ('sarsa')
+     * or the greedy action in s' ('q_learning'), according to 'rl.replay.target'.
      */
-    private double dotProduct(Map<String, Feature> features, Map<String, Float> weights) {
-        float product = 0.0f;
-        for (String featureName : features.keySet()) {
-            product += features.get(featureName).getValue() * weights.get(featureName);
+    private void replayMinibatch() {
+        for (int b = 0; b < replayBatchSize; b++) {
+            int i = replay.sample(replayRandom);
+            replay.readState(i, batchStates[b]);
+            batchActions[b] = replay.getAction(i);
+
+            double futureQ = 0;
+            if (!replay.isTerminal(i)) {
+                replay.readNextState(i, replayNextState);
+                if (replayQLearning) {
+                    futureQ = -1;
+                    for (int a = 0; a < actionNames.length; a++) {
+                        futureQ = Math.max(futureQ, qValue(replayNextState, a));
+                    }
+                } else {
+                    futureQ = qValue(replayNextState, replay.getNextAction(i));
+                }
+            }
+
+            batchDeltas[b] = replay.getReward(i) + replay.getDiscount(i) * futureQ
+                    - qValue(batchStates[b], batchActions[b]);
+        }
+
+        for (int b = 0; b < replayBatchSize; b++) {
+            batchStates[b].addTo(weights[batchActions[b]], alpha * batchDeltas[b] / replayBatchSize);
         }
-        return product;
     }
 
     /**
-     * Returns the Q-value of a choice (action), for a given set of features
+     * Returns the Q-value of a choice (action index), for a given set of features
      * 
      * @param features
      * @param choice
      * @return
      */
-    private double qValue(Map<String, Feature> features, String choice) {
-        double value = dotProduct(features, weights.get(choice));
+    private double qValue(SparseFeatures features, int choice) {
+        double value = features.dot(weights[choice]);
         return Math.max(-1, Math.min(1, value));
     }
 
+    /**
+     * Returns the normalized features of the state in sparse form, indexed as in
+     * the weight vectors
+     * 
+     * @param state
+     * @param player
+     * @return
+     */
+    public SparseFeatures getSparseFeatures(GameState state, int player) {
+        return featureExtractor.getSparseFeatures(state, player);
+    }
+
     public Map<String, Float> getFeatures(GameState state, int player) {
         Map<String, Feature> raw = featureExtractor.getFeatures(state, player);
 
@@ -326,94 +629,197 @@ public class Sarsa {
         return features;
     }
 
+    /**
+     * Returns the TD error and update norm statistics of the last games
+     * 
+     * @return
+     */
+    public ConvergenceMonitor getConvergence() {
+        return convergence;
+    }
+
     public Map<String, Double> getQValues(GameState state, int player) {
-        Map<String, Feature> stateFeatures = featureExtractor.getFeatures(state, player);
+        SparseFeatures stateFeatures = featureExtractor.getSparseFeatures(state, player);
 
         Map<String, Double> qValues = new HashMap<String, Double>();
-        for (String ai : portfolio.keySet()) {
-            Double q = qValue(stateFeatures, ai);
-            qValues.put(ai, q);
+        for (int a = 0; a < actionNames.length; a++) {
+            qValues.put(actionNames[a], qValue(stateFeatures, a));
         }
 
         return qValues;
     }
 
     /**
-     * Returns the Q-value of a state (including player information) and choice
-     * (action)
+     * Saves the weights in human-readable (csv) format. Creates one file for each
+     * portfolio member and appends a line with the weights separated by comma, in
+     * the order of the feature names (given in the header of new files)
      * 
-     * @param state
-     * @param player
-     * @param choice
-     * @return
+     * @param prefix
+     * @throws IOException
      */
-    private double qValue(GameState state, int player, String choice) {
-        return qValue(featureExtractor.getFeatures(state, player), choice);
+    public void saveHuman(String prefix) throws IOException {
+        snapshot().saveHuman(prefix);
     }
 
     /**
-     * Saves the weights in human-readable (csv) format. Creates one file for each
-     * portfolio member and appends a line with the weights separated by comma. The
-     * order of weights is as given by weights.get(portfolioMember).values()
+     * Saves the weight 'vector' to a file in the specified path by serializing the
+     * weights HashMap. The file is atomically replaced if already exists.
+     * 
+     * @param path
+     * @throws IOException
+     */
+    public void saveBin(String path) throws IOException {
+        if (weights == null) {
+            throw new RuntimeException("Attempted to save non-initialized weights");
+        }
+
+        snapshot().saveBin(path);
+    }
+
+    /**
+     * Serializes weights in the map format to path
+     * 
+     * @param path
+     * @param weightMap
+     * @throws IOException
+     */
+    static void writeWeightMap(String path, Map<String, Map<String, Float>> weightMap) throws IOException {
+        FileOutputStream fos = new FileOutputStream(path);
+        ObjectOutputStream oos = new ObjectOutputStream(fos);
+        oos.writeObject(weightMap);
+        oos.close();
+        fos.close();
+    }
+
+    /**
+     * Saves the weights of each off-policy learner (see 'rl.fanout.*') to
+     * prefix_fanout[i].bin, in the format of {@link #saveBin(String)}, where i is
+     * the position of its hyperparameters in the lists
      * 
      * @param prefix
      * @throws IOException
      */
-    public void saveHuman(String prefix) throws IOException {
+    public void saveFanOutBin(String prefix) throws IOException {
         if (weights == null) {
             throw new RuntimeException("Attempted to save non-initialized weights");
         }
+        snapshot().saveFanOutBin(prefix);
+    }
 
-        // creates a file for each AI in the portfolio (they're the keys of the weights
-        // map)
-        // if the file already exists, the weights will be appended
-        for (String aiName : weights.keySet()) {
-            File f = new File(prefix + "_" + aiName + ".csv");
-            FileWriter writer;
+    /**
+     * Returns the complete state of this learner (see {@link TrainingCheckpoint}).
+     * The random number generators are shared with this learner, hence the
+     * checkpoint must be serialized before learning continues.
+     * 
+     * @param games the number of games played so far
+     * @return
+     */
+    public TrainingCheckpoint getCheckpoint(int games) {
+        if (weights == null) {
+            throw new RuntimeException("Attempted to checkpoint non-initialized weights");
+        }
 
-            if (!f.exists()) { // creates a new file and writes the header
-                writer = new FileWriter(f, false); // must be after the test, because it creates the file upon
-                                                   // instantiation
-                writer.write("#" + String.join(",", weights.get(aiName).keySet()) + "\n");
-                writer.close();
-            }
+        TrainingCheckpoint checkpoint = new TrainingCheckpoint();
+        checkpoint.games = games;
+        checkpoint.actionNames = actionNames.clone();
+        checkpoint.featureNames = new ArrayList<>(featureNames);
+        checkpoint.weights = new float[weights.length][];
+        for (int a = 0; a < weights.length; a++) {
+            checkpoint.weights[a] = weights[a].clone();
+        }
 
-            // appends one line with each weight value separated by a comma
-            writer = new FileWriter(f, true);
-            String line = "";
-            for (double value : weights.get(aiName).values()) {
-                line += "" + value + ", ";
+        checkpoint.alpha = alpha;
+        checkpoint.epsilon = explorationStrategy.getEpsilon();
+        checkpoint.random = random;
+        checkpoint.replayRandom = replayRandom;
+        checkpoint.convergence = convergence;
+
+        checkpoint.fanOutAlphas = new double[fanOut.length];
+        checkpoint.fanOutWeights = new float[fanOut.length][][];
+        for (int i = 0; i < fanOut.length; i++) {
+            checkpoint.fanOutAlphas[i] = fanOut[i].getAlpha();
+            float[][] learnerWeights = fanOut[i].getWeights();
+            if (learnerWeights != null) {
+                checkpoint.fanOutWeights[i] = new float[learnerWeights.length][];
+                for (int a = 0; a < learnerWeights.length; a++) {
+                    checkpoint.fanOutWeights[i][a] = learnerWeights[a].clone();
+                }
             }
-            line = line.replaceAll(",$", ""); // removes the trailing comma
+        }
+        return checkpoint;
+    }
 
-            writer.write(line + "\n");
+    /**
+     * Restores the state saved by {@link #getCheckpoint(int)}. The portfolio and
+     * the off-policy learners must be the same as when it was saved.
+     * 
+     * @param checkpoint
+     */
+    public void restore(TrainingCheckpoint checkpoint) {
+        if (!Arrays.equals(checkpoint.actionNames, actionNames)) {
+            throw new RuntimeException("Checkpoint portfolio " + Arrays.toString(checkpoint.actionNames)
+                    + " differs from " + Arrays.toString(actionNames));
+        }
+        if (checkpoint.fanOutWeights.length != fanOut.length) {
+            throw new RuntimeException("Checkpoint has " + checkpoint.fanOutWeights.length
+                    + " off-policy learners, but " + fanOut.length + " are configured");
+        }
+
+        featureNames = checkpoint.featureNames;
+        weights = checkpoint.weights;
+        loadedWeights = null;
 
-            writer.close();
+        alpha = checkpoint.alpha;
+        random = checkpoint.random;
+        explorationStrategy.restore(checkpoint.epsilon, random);
+        if (replayRandom != null && checkpoint.replayRandom != null) {
+            replayRandom = checkpoint.replayRandom;
+        }
+
+        if (checkpoint.convergence == null || checkpoint.convergence.getWindow() != convergence.getWindow()) {
+            System.err.println("Convergence statistics not restored (checkpoint without them or with another window).");
+        } else {
+            convergence = checkpoint.convergence;
+        }
+
+        for (int i = 0; i < fanOut.length; i++) {
+            fanOut[i].restore(checkpoint.fanOutAlphas[i], checkpoint.fanOutWeights[i]);
         }
     }
 
     /**
-     * Saves the weight 'vector' to a file in the specified path by serializing the
-     * weights HashMap. The file is overridden if already exists.
+     * Returns a copy of the current weights (including the ones of the
+     * off-policy learners), e.g. to save them in the background
      * 
-     * @param path
-     * @throws IOException
+     * @return
      */
-    public void saveBin(String path) throws IOException {
+    public WeightSnapshot snapshot() {
+        return snapshot(true);
+    }
+
+    /**
+     * Returns a copy of the current weights, with the ones of the off-policy
+     * learners only if withFanOut is true (e.g. they are not needed by the
+     * {@link WeightHistory})
+     * 
+     * @param withFanOut
+     * @return
+     */
+    public WeightSnapshot snapshot(boolean withFanOut) {
         if (weights == null) {
             throw new RuntimeException("Attempted to save non-initialized weights");
         }
 
-        FileOutputStream fos = new FileOutputStream(path);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(weights);
-        oos.close();
-        fos.close();
+        float[][][] fanOutWeights = new float[withFanOut ? fanOut.length : 0][][];
+        for (int i = 0; i < fanOutWeights.length; i++) {
+            fanOutWeights[i] = fanOut[i].getWeights();
+        }
+        return new WeightSnapshot(actionNames, featureNames, weights, fanOutWeights);
     }
 
     /**
      * Loads the weight 'vector' from a file in the specified path by de-serializing
-     * the weights HashMap
+     * the weights HashMap. The weights take effect on the next frame.
      * 
      * @param path
      * @throws IOException
@@ -423,7 +829,8 @@ public class Sarsa {
         FileInputStream fis = new FileInputStream(path);
         ObjectInputStream ois = new ObjectInputStream(fis);
         try {
-            weights = (Map<String, Map<String, Float>>) ois.readObject();
+            loadedWeights = (Map<String, Map<String, Float>>) ois.readObject();
+            weights = null;
         } catch (ClassNotFoundException e) {
             System.err.println("Error while attempting to load weights.");
             e.printStackTrace();
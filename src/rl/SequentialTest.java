@@ -0,0 +1,128 @@
+package rl;
+
+import java.util.Properties;
+
+/**
+ * Keeps an online win/draw/loss tally of a player and tells when its score
+ * (1 per win, 0.5 per draw, 0 per loss, averaged over the matches) is known to
+ * a given precision, so that evaluation can stop early.
+ * 
+ * The score is bounded with the Wilson score interval; the result is settled
+ * once at least minGames were played and the half-width of the interval is
+ * within the precision.
+ */
+public class SequentialTest {
+
+    /**
+     * The player whose score is tallied (0 or 1, as in match results)
+     */
+    private int player;
+
+    private double precision;
+    private int minGames;
+
+    /**
+     * Critical value of the normal distribution for the desired confidence
+     */
+    private double z;
+
+    private int wins;
+    private int draws;
+    private int losses;
+
+    public SequentialTest(int player, double precision, int minGames, double z) {
+        this.player = player;
+        this.precision = precision;
+        this.minGames = minGames;
+        this.z = z;
+    }
+
+    /**
+     * Creates a test from 'runner.sequential.precision',
+     * 'runner.sequential.min_games', 'runner.sequential.z' and
+     * 'runner.sequential.player' (1 or 2), or returns null if the precision is
+     * not specified
+     * 
+     * @param config
+     * @return
+     */
+    public static SequentialTest fromConfig(Properties config) {
+        if (!config.containsKey("runner.sequential.precision")) {
+            return null;
+        }
+        return new SequentialTest(
+            Integer.parseInt(config.getProperty("runner.sequential.player", "2")) - 1,
+            Double.parseDouble(config.getProperty("runner.sequential.precision")),
+            Integer.parseInt(config.getProperty("runner.sequential.min_games", "30")),
+            Double.parseDouble(config.getProperty("runner.sequential.z", "1.96"))
+        );
+    }
+
+    /**
+     * Tallies the result of a match (as returned by
+     * {@link Runner#headlessMatch}). Match errors are ignored.
+     * 
+     * @param result
+     */
+    public void add(int result) {
+        if (result == Runner.DRAW) {
+            draws++;
+        } else if (result == player) {
+            wins++;
+        } else if (result == 1 - player) {
+            losses++;
+        }
+    }
+
+    public int getGames() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Returns the mean score of the player
+     * 
+     * @return
+     */
+    public double getScore() {
+        int n = getGames();
+        return n == 0 ? 0 : (wins + 0.5 * draws) / n;
+    }
+
+    /**
+     * Returns the {lower, upper} bounds of the Wilson score interval of the score
+     * 
+     * @return
+     */
+    public double[] getInterval() {
+        int n = getGames();
+        if (n == 0) {
+            return new double[] { 0, 1 };
+        }
+
+        double p = getScore();
+        double z2 = z * z;
+        double center = (p + z2 / (2 * n)) / (1 + z2 / n);
+        double halfWidth = z / (1 + z2 / n) * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+        return new double[] { Math.max(0, center - halfWidth), Math.min(1, center + halfWidth) };
+    }
+
+    /**
+     * Returns whether the score is known to the configured precision
+     * 
+     * @return
+     */
+    public boolean isSettled() {
+        if (getGames() < minGames) {
+            return false;
+        }
+        double[] interval = getInterval();
+        return (interval[1] - interval[0]) / 2 <= precision;
+    }
+
+    @Override
+    public String toString() {
+        double[] interval = getInterval();
+        return String.format("%d wins, %d draws, %d losses; score %.3f in [%.3f, %.3f]", wins, draws, losses,
+                getScore(), interval[0], interval[1]);
+    }
+}
@@ -0,0 +1,102 @@
+package rl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The complete state of a {@link Sarsa} learner after a number of games:
+ * weights, the decayed learning and exploration rates, the random number
+ * generators, the off-policy learners and the convergence statistics, so that
+ * an interrupted training run can be continued as if it had not stopped. The replay buffer (if any) is not
+ * included, it is refilled after resuming.
+ *
+ * Checkpoints are written with Java serialization.
+ */
+public class TrainingCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of games played when the checkpoint was taken
+     */
+    int games;
+
+    String[] actionNames;
+    List<String> featureNames;
+    float[][] weights;
+
+    double alpha;
+    double epsilon;
+    Random random;
+    Random replayRandom;
+
+    double[] fanOutAlphas;
+    float[][][] fanOutWeights;
+
+    ConvergenceMonitor convergence;
+
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Serializes this checkpoint, capturing the state of the random number
+     * generators at the time of the call
+     *
+     * @return
+     * @throws IOException
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(this);
+        oos.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a serialized checkpoint to a temporary file which then replaces
+     * path, so that an interruption never leaves a partial checkpoint
+     *
+     * @param path
+     * @param bytes
+     * @throws IOException
+     */
+    public static void write(String path, byte[] bytes) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        Files.write(temp, bytes);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #write(String, byte[])}
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static TrainingCheckpoint read(String path) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path))) {
+            return (TrainingCheckpoint) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Invalid training checkpoint: " + path, e);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package rl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import rts.GameState;
+import rts.PartiallyObservableGameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+
+/**
+ * Keeps, across the frames of a match, how many units of each player see each
+ * tile. Only units that moved, spawned or died since the previous
+ * {@link #update(GameState)} change the counts, so that each player's
+ * {@link PartiallyObservableGameState} can be built without recomputing
+ * visibility from scratch (see {@link #observe(GameState, int)}).
+ */
+public class VisibilityTracker {
+
+    /**
+     * Indexes of the entries of a tracked unit
+     */
+    private static final int X = 0, Y = 1, RADIUS = 2, PLAYER = 3, FRAME = 4;
+
+    private int width;
+    private int height;
+
+    /**
+     * For each player, the number of its units that see each tile (y * width + x)
+     */
+    private int[][] sight;
+
+    /**
+     * Whether sight[player] was handed out to a view and must be copied before
+     * being modified
+     */
+    private boolean[] shared;
+
+    /**
+     * The units that grant sight, by ID, with their position, sight radius,
+     * owner and the last frame they were seen
+     */
+    private Map<Long, int[]> units;
+
+    private int frame;
+
+    public VisibilityTracker(PhysicalGameState pgs) {
+        width = pgs.getWidth();
+        height = pgs.getHeight();
+        sight = new int[2][width * height];
+        shared = new boolean[2];
+        units = new HashMap<>();
+    }
+
+    /**
+     * Updates the visibility counts with the units that moved, spawned or died
+     * since the last call
+     * 
+     * @param state
+     */
+    public void update(GameState state) {
+        frame++;
+
+        for (Unit u : state.getPhysicalGameState().getUnits()) {
+            if (u.getPlayer() < 0)
+                continue; // resources grant no sight
+
+            int[] tracked = units.get(u.getID());
+            if (tracked == null) {
+                tracked = new int[] { u.getX(), u.getY(), u.getType().sightRadius, u.getPlayer(), frame };
+                units.put(u.getID(), tracked);
+                addSight(tracked, 1);
+            } else if (tracked[X] != u.getX() || tracked[Y] != u.getY()) {
+                addSight(tracked, -1);
+                tracked[X] = u.getX();
+                tracked[Y] = u.getY();
+                addSight(tracked, 1);
+            }
+            tracked[FRAME] = frame;
+        }
+
+        // units not seen in this frame have died
+        Iterator<int[]> it = units.values().iterator();
+        while (it.hasNext()) {
+            int[] tracked = it.next();
+            if (tracked[FRAME] != frame) {
+                addSight(tracked, -1);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds delta to the count of every tile within the sight radius of the
+     * tracked unit
+     * 
+     * @param tracked
+     * @param delta
+     */
+    private void addSight(int[] tracked, int delta) {
+        int player = tracked[PLAYER];
+        if (shared[player]) {
+            sight[player] = sight[player].clone();
+            shared[player] = false;
+        }
+
+        int[] counts = sight[player];
+        int radius = tracked[RADIUS];
+        for (int y = Math.max(0, tracked[Y] - radius); y <= Math.min(height - 1, tracked[Y] + radius); y++) {
+            int dy = y - tracked[Y];
+            for (int x = Math.max(0, tracked[X] - radius); x <= Math.min(width - 1, tracked[X] + radius); x++) {
+                int dx = x - tracked[X];
+                if (dx * dx + dy * dy <= radius * radius) {
+                    counts[y * width + x] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether any unit of the player sees the tile at (x, y)
+     * 
+     * @param player
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean isVisible(int player, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return false;
+        return sight[player][y * width + x] > 0;
+    }
+
+    /**
+     * Returns the state as observed by the player. Must be called after
+     * {@link #update(GameState)} in the same frame.
+     * 
+     * @param state
+     * @param player
+     * @return
+     */
+    public PartiallyObservableGameState observe(GameState state, int player) {
+        shared[player] = true;
+        return new TrackedObservableGameState(state, player, sight[player], width);
+    }
+
+    /**
+     * A {@link PartiallyObservableGameState} that looks visibility up in the
+     * counts of a {@link VisibilityTracker} instead of measuring the distance to
+     * every unit of the player
+     */
+    static class TrackedObservableGameState extends PartiallyObservableGameState {
+
+        /**
+         * The counts of the player (null while the superclass constructor runs)
+         */
+        private int[] sight;
+        private int width;
+
+        TrackedObservableGameState(GameState state, int player, int[] sight, int width) {
+            // the superclass keeps every unit, as the counts are not set yet
+            super(state, player);
+            this.sight = sight;
+            this.width = width;
+
+            // removes the opponent units the player does not see, as the superclass would
+            List<Unit> hidden = new ArrayList<>();
+            for (Unit u : getPhysicalGameState().getUnits()) {
+                if (u.getPlayer() != player && !observable(u.getX(), u.getY())) {
+                    hidden.add(u);
+                }
+            }
+            for (Unit u : hidden) {
+                removeUnit(u);
+            }
+        }
+
+        /**
+         * Returns whether the player sees the tile. Every tile counts as visible
+         * until the counts are set at the end of the construction.
+         */
+        @Override
+        public boolean observable(int x, int y) {
+            if (sight == null)
+                return true;
+            if (x < 0 || y < 0 || x >= width || y * width + x >= sight.length)
+                return false;
+            return sight[y * width + x] > 0;
+        }
+    }
+}
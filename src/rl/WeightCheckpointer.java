@@ -0,0 +1,125 @@
+package rl;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes {@link WeightSnapshot}s in a background thread, so that the game
+ * thread does not wait for the disk. Checkpoints are written one at a time, in
+ * the order they were submitted.
+ *
+ * A single writer is shared by the whole JVM (by each worker thread's copy of
+ * the classes, under {@link IsolatedJob}). Pending checkpoints are written
+ * before the JVM exits (via a shutdown hook) and whenever
+ * {@link #awaitPending()} is called.
+ */
+public class WeightCheckpointer {
+
+    private static final Logger logger = LogManager.getLogger(WeightCheckpointer.class);
+
+    private static ExecutorService writer;
+
+    /**
+     * Returns the writer thread, starting it (and registering the shutdown hook)
+     * on the first call
+     * 
+     * @return
+     */
+    private static synchronized ExecutorService getWriter() {
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "weight-checkpointer");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                writer.shutdown();
+                try {
+                    if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                        logger.error("Pending weight checkpoints were not written");
+                    }
+                } catch (InterruptedException e) {
+                    logger.error("Interrupted while writing the pending weight checkpoints", e);
+                }
+            }));
+        }
+        return writer;
+    }
+
+    /**
+     * Queues a snapshot to be written. Null paths are skipped.
+     * 
+     * @param snapshot
+     * @param binPath      where to save the weights (see
+     *                     {@link WeightSnapshot#saveBin(String)})
+     * @param fanOutPrefix prefix of the weights of the off-policy learners (see
+     *                     {@link WeightSnapshot#saveFanOutBin(String)})
+     * @param humanPrefix  prefix of the csv files (see
+     *                     {@link WeightSnapshot#saveHuman(String)})
+     */
+    public static void submit(WeightSnapshot snapshot, String binPath, String fanOutPrefix, String humanPrefix) {
+        submit("weight checkpoint " + (binPath != null ? binPath : humanPrefix), () -> {
+            if (binPath != null) {
+                snapshot.saveBin(binPath);
+            }
+            if (fanOutPrefix != null) {
+                snapshot.saveFanOutBin(fanOutPrefix);
+            }
+            if (humanPrefix != null) {
+                snapshot.saveHuman(humanPrefix);
+            }
+        });
+    }
+
+    /**
+     * A write performed by the writer thread
+     */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    /**
+     * Queues a write (e.g. of a {@link WeightHistory} record), to be performed
+     * after the ones already submitted. Errors are logged.
+     * 
+     * @param description used in the error message
+     * @param write
+     */
+    public static void submit(String description, Write write) {
+        getWriter().execute(() -> {
+            try {
+                write.run();
+            } catch (IOException e) {
+                logger.error("Error while writing " + description, e);
+            }
+        });
+    }
+
+    /**
+     * Blocks until every checkpoint submitted so far has been written
+     */
+    public static void awaitPending() {
+        ExecutorService current;
+        synchronized (WeightCheckpointer.class) {
+            current = writer;
+        }
+        if (current == null) {
+            return; // nothing was ever submitted
+        }
+
+        try {
+            current.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error while waiting for the weight checkpoints", e);
+        }
+    }
+
+}
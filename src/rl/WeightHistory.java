@@ -0,0 +1,286 @@
+package rl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the weights of every game in a binary file, one fixed-width record
+ * per game, appended through a {@link FileChannel}. All values are
+ * little-endian.
+ *
+ * The file starts with a header: the magic number, the version, the number of
+ * actions and of features, followed by the action names and the feature names
+ * (each one as a 2-byte length and its UTF-8 bytes). Each record holds the game
+ * number (4 bytes) and the weights (4-byte floats), indexed [action][feature]
+ * in the order of the header.
+ *
+ * See {@link WeightHistoryExport} to convert a history to csv.
+ */
+public class WeightHistory implements Closeable {
+
+    public static final int MAGIC = 0x4857424D; // "MBWH" in little-endian
+    public static final int VERSION = 1;
+
+    private FileChannel channel;
+
+    private List<String> actionNames;
+    private List<String> featureNames;
+
+    private long headerSize;
+    private int recordSize;
+
+    private ByteBuffer record;
+
+    private WeightHistory(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a history for appending. A new file is created with the header of
+     * the given names; an existing file must have the same names. A partially
+     * written record at the end (e.g. from an interrupted run) is discarded.
+     *
+     * @param path
+     * @param actionNames
+     * @param featureNames
+     * @return
+     * @throws IOException
+     */
+    public static WeightHistory append(String path, String[] actionNames, List<String> featureNames)
+            throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        WeightHistory history = new WeightHistory(channel);
+
+        try {
+            if (channel.size() == 0) {
+                history.writeHeader(Arrays.asList(actionNames), featureNames);
+            } else {
+                history.readHeader();
+                if (!history.actionNames.equals(Arrays.asList(actionNames))
+                        || !history.featureNames.equals(featureNames)) {
+                    throw new IOException("Weight history " + path + " was recorded with different actions or features");
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        long records = (channel.size() - history.headerSize) / history.recordSize;
+        channel.truncate(history.headerSize + records * history.recordSize);
+        channel.position(channel.size());
+        return history;
+    }
+
+    /**
+     * Opens a history for reading
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static WeightHistory read(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        WeightHistory history = new WeightHistory(channel);
+        try {
+            history.readHeader();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return history;
+    }
+
+    /**
+     * Discards the records of the games after the given one (e.g. the games
+     * played after the checkpoint a run is resumed from), as well as a
+     * partially written record at the end. Records are in increasing order of
+     * game.
+     *
+     * @param path
+     * @param game the last game to keep
+     * @return the number of records discarded
+     * @throws IOException
+     */
+    public static long truncateAfter(String path, int game) throws IOException {
+        try (WeightHistory history = new WeightHistory(
+                FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+            history.readHeader();
+
+            long records = history.size();
+            long kept = records;
+            while (kept > 0 && history.readGame(kept - 1) > game) {
+                kept--;
+            }
+            history.channel.truncate(history.headerSize + kept * history.recordSize);
+            return records - kept;
+        }
+    }
+
+    private void writeHeader(List<String> actionNames, List<String> featureNames) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        int size = 16;
+        for (String name : actionNames) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            size += 2 + names.get(names.size() - 1).length;
+        }
+        for (String name : featureNames) {
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            size += 2 + names.get(names.size() - 1).length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(actionNames.size()).putInt(featureNames.size());
+        for (byte[] name : names) {
+            header.putShort((short) name.length).put(name);
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+
+        setLayout(new ArrayList<>(actionNames), new ArrayList<>(featureNames), size);
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer fixed = readFully(0, 16);
+        if (fixed.getInt() != MAGIC) {
+            throw new IOException("Not a weight history file");
+        }
+        int version = fixed.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported weight history version: " + version);
+        }
+        int numActions = fixed.getInt();
+        int numFeatures = fixed.getInt();
+
+        long position = 16;
+        List<String> actions = new ArrayList<>();
+        List<String> features = new ArrayList<>();
+        for (int i = 0; i < numActions + numFeatures; i++) {
+            int length = readFully(position, 2).getShort() & 0xFFFF;
+            ByteBuffer name = readFully(position + 2, length);
+            (i < numActions ? actions : features).add(new String(name.array(), StandardCharsets.UTF_8));
+            position += 2 + length;
+        }
+
+        setLayout(actions, features, position);
+    }
+
+    private int readGame(long i) throws IOException {
+        return readFully(headerSize + i * recordSize, 4).getInt();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of weight history");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void setLayout(List<String> actionNames, List<String> featureNames, long headerSize) {
+        this.actionNames = actionNames;
+        this.featureNames = featureNames;
+        this.headerSize = headerSize;
+        recordSize = 4 + 4 * actionNames.size() * featureNames.size();
+        record = ByteBuffer.allocate(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Appends the weights of a game
+     *
+     * @param game
+     * @param snapshot
+     * @throws IOException
+     */
+    public void record(int game, WeightSnapshot snapshot) throws IOException {
+        record(game, snapshot.getWeights());
+    }
+
+    /**
+     * Appends the weights of a game
+     *
+     * @param game
+     * @param weights indexed [action][feature]
+     * @throws IOException
+     */
+    public synchronized void record(int game, float[][] weights) throws IOException {
+        record.clear();
+        record.putInt(game);
+        for (float[] actionWeights : weights) {
+            for (float weight : actionWeights) {
+                record.putFloat(weight);
+            }
+        }
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+    }
+
+    /**
+     * Returns the number of records
+     *
+     * @return
+     * @throws IOException
+     */
+    public long size() throws IOException {
+        return (channel.size() - headerSize) / recordSize;
+    }
+
+    /**
+     * Reads the i-th record into weights (indexed [action][feature]) and returns
+     * its game number
+     *
+     * @param i
+     * @param weights
+     * @return
+     * @throws IOException
+     */
+    public synchronized int readRecord(long i, float[][] weights) throws IOException {
+        record.clear();
+        long position = headerSize + i * recordSize;
+        while (record.hasRemaining()) {
+            if (channel.read(record, position + record.position()) < 0) {
+                throw new IOException("Record " + i + " is beyond the end of the weight history");
+            }
+        }
+        record.flip();
+
+        int game = record.getInt();
+        for (float[] actionWeights : weights) {
+            for (int f = 0; f < actionWeights.length; f++) {
+                actionWeights[f] = record.getFloat();
+            }
+        }
+        return game;
+    }
+
+    public List<String> getActionNames() {
+        return actionNames;
+    }
+
+    public List<String> getFeatureNames() {
+        return featureNames;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+}
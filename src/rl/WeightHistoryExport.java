@@ -0,0 +1,107 @@
+package rl;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Exports (a slice of) a {@link WeightHistory} to csv, with one line per game
+ * and action: game, action and one column per feature, named in the header.
+ */
+public class WeightHistoryExport {
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        options.addOption("i", "input", true, "weight history file");
+        options.addOption("o", "output", true, "csv file (default: standard output)");
+        options.addOption("a", "action", true, "only export the weights of this action (portfolio member)");
+        options.addOption("f", "first", true, "first game to export (default: 1)");
+        options.addOption("l", "last", true, "last game to export (default: all)");
+        options.addOption("s", "step", true, "export every s-th record (default: 1)");
+
+        CommandLine cmd;
+        try {
+            cmd = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("WeightHistoryExport", options);
+            return;
+        }
+        if (!cmd.hasOption("i")) {
+            new HelpFormatter().printHelp("WeightHistoryExport", options);
+            return;
+        }
+
+        int first = Integer.parseInt(cmd.getOptionValue("f", "1"));
+        int last = Integer.parseInt(cmd.getOptionValue("l", "" + Integer.MAX_VALUE));
+        int step = Integer.parseInt(cmd.getOptionValue("s", "1"));
+
+        try (WeightHistory history = WeightHistory.read(cmd.getOptionValue("i"));
+                Writer out = cmd.hasOption("o") ? new FileWriter(cmd.getOptionValue("o"))
+                        : new OutputStreamWriter(System.out)) {
+            export(history, out, cmd.getOptionValue("a"), first, last, step);
+        }
+    }
+
+    /**
+     * Writes the records of games in [first, last] (every step-th one) to out
+     * 
+     * @param history
+     * @param out
+     * @param action  the action to export (all if null)
+     * @param first
+     * @param last
+     * @param step
+     * @throws IOException
+     */
+    public static void export(WeightHistory history, Writer out, String action, int first, int last, int step)
+            throws IOException {
+        List<String> actionNames = history.getActionNames();
+        List<String> featureNames = history.getFeatureNames();
+
+        if (action != null && !actionNames.contains(action)) {
+            throw new IllegalArgumentException("Action " + action + " not in " + actionNames);
+        }
+
+        StringBuilder line = new StringBuilder("game,action");
+        for (String feature : featureNames) {
+            line.append(',').append(feature);
+        }
+        out.write(line.append('\n').toString());
+
+        float[][] weights = new float[actionNames.size()][featureNames.size()];
+        long records = history.size();
+        int exported = 0;
+
+        for (long i = 0; i < records; i++) {
+            int game = history.readRecord(i, weights);
+            if (game < first || game > last || exported++ % step != 0) {
+                continue;
+            }
+
+            for (int a = 0; a < actionNames.size(); a++) {
+                if (action != null && !action.equals(actionNames.get(a))) {
+                    continue;
+                }
+
+                line.setLength(0);
+                line.append(game).append(',').append(actionNames.get(a));
+                for (float weight : weights[a]) {
+                    line.append(',').append(weight);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+        out.flush();
+    }
+
+}
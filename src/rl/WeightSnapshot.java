@@ -0,0 +1,146 @@
+package rl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of the weights of a {@link Sarsa} agent (and of its
+ * off-policy learners), which can be written to disk while the agent keeps
+ * learning.
+ */
+public class WeightSnapshot {
+
+    private String[] actionNames;
+    private List<String> featureNames;
+    private float[][] weights;
+    private float[][][] fanOutWeights;
+
+    /**
+     * Copies the given weights
+     * 
+     * @param actionNames
+     * @param featureNames
+     * @param weights       indexed [action][feature]
+     * @param fanOutWeights indexed [learner][action][feature] (null entries for
+     *                      learners without weights)
+     */
+    WeightSnapshot(String[] actionNames, List<String> featureNames, float[][] weights, float[][][] fanOutWeights) {
+        this.actionNames = actionNames.clone();
+        this.featureNames = featureNames;
+        this.weights = copy(weights);
+        this.fanOutWeights = new float[fanOutWeights.length][][];
+        for (int i = 0; i < fanOutWeights.length; i++) {
+            this.fanOutWeights[i] = fanOutWeights[i] == null ? null : copy(fanOutWeights[i]);
+        }
+    }
+
+    private static float[][] copy(float[][] weights) {
+        float[][] copy = new float[weights.length][];
+        for (int a = 0; a < weights.length; a++) {
+            copy[a] = weights[a].clone();
+        }
+        return copy;
+    }
+
+    public String[] getActionNames() {
+        return actionNames;
+    }
+
+    public List<String> getFeatureNames() {
+        return featureNames;
+    }
+
+    /**
+     * Returns the weights, indexed [action][feature] (not a copy: must not be
+     * modified)
+     * 
+     * @return
+     */
+    float[][] getWeights() {
+        return weights;
+    }
+
+    /**
+     * Saves the weights as in {@link Sarsa#saveBin(String)}. They are written to
+     * a temporary file which then replaces path, so that readers never see a
+     * partially written file.
+     * 
+     * @param path
+     * @throws IOException
+     */
+    public void saveBin(String path) throws IOException {
+        writeAtomically(path, Sarsa.toWeightMap(actionNames, featureNames, weights));
+    }
+
+    /**
+     * Saves the weights of each off-policy learner as in
+     * {@link Sarsa#saveFanOutBin(String)}
+     * 
+     * @param prefix
+     * @throws IOException
+     */
+    public void saveFanOutBin(String prefix) throws IOException {
+        for (int i = 0; i < fanOutWeights.length; i++) {
+            if (fanOutWeights[i] != null) {
+                writeAtomically(prefix + "_fanout" + i + ".bin",
+                        Sarsa.toWeightMap(actionNames, featureNames, fanOutWeights[i]));
+            }
+        }
+    }
+
+    private static void writeAtomically(String path, Map<String, Map<String, Float>> weightMap) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+        Sarsa.writeWeightMap(temp.toString(), weightMap);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Saves the weights in human-readable (csv) format, as in
+     * {@link Sarsa#saveHuman(String)}. The columns follow the order of
+     * {@link #getFeatureNames()}.
+     * 
+     * @param prefix
+     * @throws IOException
+     */
+    public void saveHuman(String prefix) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        // creates a file for each AI in the portfolio
+        // if the file already exists, the weights will be appended
+        for (int a = 0; a < actionNames.length; a++) {
+            File f = new File(prefix + "_" + actionNames[a] + ".csv");
+            boolean header = !f.exists();
+
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(f, true))) {
+                if (header) {
+                    writer.write("#" + String.join(",", featureNames) + "\n");
+                }
+
+                // appends one line with each weight value separated by a comma
+                line.setLength(0);
+                for (int i = 0; i < weights[a].length; i++) {
+                    if (i > 0) {
+                        line.append(", ");
+                    }
+                    line.append((double) weights[a][i]);
+                }
+                writer.write(line.append('\n').toString());
+            }
+        }
+    }
+
+}
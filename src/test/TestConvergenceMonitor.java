@@ -0,0 +1,95 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import rl.ConvergenceMonitor;
+import rl.EarlyStop;
+
+public class TestConvergenceMonitor {
+
+	private static final String[] MEMBERS = { "WorkerRush", "LightRush", "Expand" };
+
+	/**
+	 * Plays a game in which each member with a non-negative TD error is updated
+	 * once with that error (and an update norm of a tenth of it)
+	 */
+	private void game(ConvergenceMonitor monitor, double... tdErrors) {
+		for (int a = 0; a < tdErrors.length; a++) {
+			if (tdErrors[a] >= 0) {
+				monitor.add(a, tdErrors[a], tdErrors[a] / 10);
+			}
+		}
+		monitor.concludeGame();
+	}
+
+	@Test
+	/**
+	 * Test if only the last window games are kept once the ring wraps around
+	 */
+	public void testWrapAround() {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(MEMBERS, 3);
+		game(monitor, 1, 1, 1);
+		game(monitor, 1, 1, 1);
+		assertFalse(monitor.isBelow(0.5, 0.5, true));
+
+		game(monitor, 0.1, 0.1, 0.1);
+		game(monitor, 0.2, 0.2, 0.2);
+		game(monitor, 0.3, -1, 0.3);
+		assertEquals(5, monitor.getGames());
+		assertEquals(0.2, monitor.getTdError(0), 1e-9);
+		assertEquals(0.02, monitor.getUpdateNorm(0), 1e-9);
+		assertEquals(2, monitor.getUpdates(1));
+		assertTrue(monitor.isBelow(0.5, 0.5, true));
+
+		game(monitor, 2, 0.1, 0.1);
+		assertFalse(monitor.isBelow(0.5, 0.5, true));
+	}
+
+	@Test
+	/**
+	 * Test if a member never chosen in the window prevents convergence, unless
+	 * unchosen members are ignored
+	 */
+	public void testUnchosenMember() {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(MEMBERS, 2);
+		game(monitor, 0.1, -1, -1);
+		game(monitor, 0.1, -1, 0.1);
+
+		assertTrue(Double.isNaN(monitor.getTdError(1)));
+		assertEquals(0.1, monitor.getTdError(2), 1e-9);
+		assertEquals(Arrays.asList("LightRush"), monitor.getUnchosenMembers());
+
+		assertFalse(monitor.isBelow(0.5, 0.5, true));
+		assertTrue(monitor.isBelow(0.5, 0.5, false));
+		assertFalse(monitor.isBelow(0.05, 0.5, false));
+	}
+
+	@Test
+	/**
+	 * Test if the early stop waits for the minimum number of games and for
+	 * every learner
+	 */
+	public void testEarlyStop() {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(MEMBERS, 2);
+		game(monitor, 0.1, 0.1, 0.1);
+		game(monitor, 0.1, 0.1, 0.1);
+
+		EarlyStop earlyStop = new EarlyStop(0.5, Double.POSITIVE_INFINITY, 5);
+		assertFalse(earlyStop.shouldStop(4, Collections.singletonList(monitor)));
+		assertTrue(earlyStop.shouldStop(5, Collections.singletonList(monitor)));
+		assertFalse(earlyStop.shouldStop(5, Collections.emptyList()));
+
+		ConvergenceMonitor unsettled = new ConvergenceMonitor(MEMBERS, 2);
+		game(unsettled, 0.1, 0.1, 0.1);
+		game(unsettled, 0.1, 0.9, 0.1);
+		assertFalse(earlyStop.shouldStop(5, Arrays.asList(monitor, unsettled)));
+	}
+
+}
@@ -0,0 +1,126 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import features.HashedFeatureExtractor;
+import features.SparseFeatures;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+public class TestHashedFeatureExtractor {
+
+	private GameState state;
+
+	@Before
+	public void setUp() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		state = new GameState(PhysicalGameState.load("maps/24x24/basesWorkers24x24.xml", types), types);
+	}
+
+	private float[] dense(SparseFeatures features, int length) {
+		float[] dense = new float[length];
+		features.toDense(dense, 0, length);
+		return dense;
+	}
+
+	@Test
+	/**
+	 * Test if the indices lie within [0, size) and are distinct, for sizes
+	 * that do not divide the hash range (negative hashes must not give negative
+	 * indices)
+	 */
+	public void testIndexRange() {
+		for (int size : new int[] { 1, 3, 1000, 1000003 }) {
+			SparseFeatures features = new HashedFeatureExtractor(size, 4).getSparseFeatures(state, 0);
+			boolean[] seen = new boolean[size];
+			for (int i = 0; i < features.size(); i++) {
+				int index = features.index(i);
+				assertTrue("Index " + index + " out of [0, " + size + ")", index >= 0 && index < size);
+				assertTrue("Repeated index " + index, !seen[index]);
+				seen[index] = true;
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Test if colliding features add up: each bucket of a small extractor holds
+	 * the sum of the buckets of a large one that fold into it (the small size
+	 * divides the large one, so bucket i folds into bucket i % small)
+	 */
+	public void testCollisionsAddUp() {
+		int large = 1 << 16;
+		int small = 4;
+		float[] fine = dense(new HashedFeatureExtractor(large, 4).getSparseFeatures(state, 0), large);
+		float[] coarse = dense(new HashedFeatureExtractor(small, 4).getSparseFeatures(state, 0), small);
+
+		float[] expected = new float[small];
+		for (int i = 0; i < large; i++) {
+			expected[i % small] += fine[i];
+		}
+		for (int b = 0; b < small; b++) {
+			assertEquals("Bucket " + b, Math.min(expected[b], 1), coarse[b], 1e-6);
+		}
+	}
+
+	@Test
+	/**
+	 * Test if entries are truncated to 1: with a single bucket, every feature
+	 * collides (the bias alone is 1)
+	 */
+	public void testTruncation() {
+		SparseFeatures features = new HashedFeatureExtractor(1, 4).getSparseFeatures(state, 0);
+		assertEquals(1, features.size());
+		assertEquals(0, features.index(0));
+		assertEquals(1, features.value(0), 0);
+
+		for (int size : new int[] { 7, 1024 }) {
+			SparseFeatures bounded = new HashedFeatureExtractor(size, 4).getSparseFeatures(state, 1);
+			for (int i = 0; i < bounded.size(); i++) {
+				assertTrue(bounded.value(i) > 0 && bounded.value(i) <= 1);
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Test if an instance shared by several threads gives the same features as
+	 * when used by a single thread
+	 */
+	public void testSharedAmongThreads() throws Exception {
+		HashedFeatureExtractor extractor = new HashedFeatureExtractor(64, 4);
+		String[] expected = {
+			Arrays.toString(dense(extractor.getSparseFeatures(state, 0), 64)),
+			Arrays.toString(dense(extractor.getSparseFeatures(state, 1), 64)),
+		};
+
+		List<Callable<String>> extractions = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int player = i % 2;
+			extractions.add(() -> Arrays.toString(dense(extractor.getSparseFeatures(state, player), 64)));
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = pool.invokeAll(extractions);
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(expected[i % 2], results.get(i).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
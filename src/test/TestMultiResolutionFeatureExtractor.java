@@ -0,0 +1,68 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import features.MultiResolutionFeatureExtractor;
+import features.QuadrantModelFeatureExtractor;
+import features.SparseFeatures;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+public class TestMultiResolutionFeatureExtractor {
+
+	private GameState state;
+
+	@Before
+	public void setUp() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		state = new GameState(PhysicalGameState.load("maps/24x24/basesWorkers24x24.xml", types), types);
+	}
+
+	private float[] dense(SparseFeatures features, int length) {
+		float[] dense = new float[length];
+		features.toDense(dense, 0, length);
+		return dense;
+	}
+
+	@Test
+	/**
+	 * Test if a single division gives the features of the quadrant model with
+	 * the same number of quadrants, for both players
+	 */
+	public void testSingleDivisionMatchesQuadrantModel() {
+		// a damaged unit, so that the average health is not trivially 1
+		for (Unit u : state.getPhysicalGameState().getUnits()) {
+			if (!u.getType().isResource && u.getType().hp > 1) {
+				u.setHitPoints(u.getType().hp / 2);
+				break;
+			}
+		}
+
+		QuadrantModelFeatureExtractor quadrants = new QuadrantModelFeatureExtractor(3);
+		MultiResolutionFeatureExtractor multi = new MultiResolutionFeatureExtractor(new int[] { 3 });
+
+		int length = quadrants.getFeatureNames(state).size();
+		assertEquals(length, multi.getFeatureNames(state).size());
+
+		for (int player = 0; player < 2; player++) {
+			assertEquals(Arrays.toString(dense(quadrants.getSparseFeatures(state, player), length)),
+					Arrays.toString(dense(multi.getSparseFeatures(state, player), length)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	/**
+	 * Test if a division whose quadrants would have no tiles (more quadrants
+	 * than tiles per side) is refused, rather than giving NaN features
+	 */
+	public void testDivisionLargerThanMap() {
+		new MultiResolutionFeatureExtractor(new int[] { 2, 25 }).getSparseFeatures(state, 0);
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -12,8 +13,10 @@ import org.junit.Test;
 
 import features.Feature;
 import features.QuadrantModelFeatureExtractor;
+import features.SparseFeatures;
 import rts.GameState;
 import rts.PhysicalGameState;
+import rts.units.Unit;
 import rts.units.UnitTypeTable;
 
 public class TestQuadrantModelFeatureExtractor {
@@ -94,6 +97,81 @@ public class TestQuadrantModelFeatureExtractor {
 		fail("Not yet implemented"); // TODO
 	}
 
-	
+	@Test
+	/**
+	 * Test if the sparse features match the normalized feature map
+	 */
+	public void testGetSparseFeatures() {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		GameState state = null;
+		try {
+			state = new GameState(PhysicalGameState.load("maps/test/basesWorkers24x24.xml", types),types);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("Failed to load game state");
+		}
+		
+		QuadrantModelFeatureExtractor featureExtractor = new QuadrantModelFeatureExtractor(3);
+		
+		List<String> featureNames = featureExtractor.getFeatureNames(state);
+		float[] dense = new float[featureNames.size()];
+		
+		for (int player = 0; player < 2; player++) {
+			Map<String, Feature> features = featureExtractor.getFeatures(state, player);
+			SparseFeatures sparse = featureExtractor.getSparseFeatures(state, player);
+			sparse.toDense(dense, 0, dense.length);
+			
+			for (int i = 0; i < featureNames.size(); i++) {
+				assertEquals(featureNames.get(i), features.get(featureNames.get(i)).getValue(), dense[i], 1e-6);
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Test if the sparse features stay correct when the extractor alternates
+	 * between a state and its successor (as Sarsa does with s and s'), where a
+	 * unit died, one moved and one was damaged. The extraction keeps no state
+	 * between calls: each one is a single pass over the units, so there is
+	 * nothing left for an incremental update (by unit ID diffs) to save.
+	 */
+	public void testGetSparseFeaturesAlternatingStates() {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		GameState state = null;
+		try {
+			state = new GameState(PhysicalGameState.load("maps/test/basesWorkers24x24.xml", types),types);
+		} catch (Exception e) {
+			e.printStackTrace();
+			fail("Failed to load game state");
+		}
+		
+		GameState next = state.clone();
+		PhysicalGameState pgs = next.getPhysicalGameState();
+		List<Unit> units = new ArrayList<>();
+		for (Unit u : pgs.getUnits()) {
+			if (!u.getType().isResource) {
+				units.add(u);
+			}
+		}
+		pgs.removeUnit(units.get(0));
+		units.get(1).setX(pgs.getWidth() - 1 - units.get(1).getX());
+		units.get(2).setHitPoints(Math.max(1, units.get(2).getHitPoints() / 2));
+		
+		QuadrantModelFeatureExtractor featureExtractor = new QuadrantModelFeatureExtractor(3);
+		
+		List<String> featureNames = featureExtractor.getFeatureNames(state);
+		float[] dense = new float[featureNames.size()];
+		
+		for (int call = 0; call < 4; call++) {
+			GameState current = call % 2 == 0 ? state : next;
+			Map<String, Feature> features = featureExtractor.getFeatures(current, 0);
+			SparseFeatures sparse = featureExtractor.getSparseFeatures(current, 0);
+			sparse.toDense(dense, 0, dense.length);
+			
+			for (int i = 0; i < featureNames.size(); i++) {
+				assertEquals(featureNames.get(i), features.get(featureNames.get(i)).getValue(), dense[i], 1e-6);
+			}
+		}
+	}
 
 }
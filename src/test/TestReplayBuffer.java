@@ -0,0 +1,68 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import features.SparseFeatures;
+import rl.ReplayBuffer;
+
+public class TestReplayBuffer {
+
+	private SparseFeatures features(int... indices) {
+		SparseFeatures features = new SparseFeatures();
+		for (int index : indices) {
+			features.add(index, index + 0.5f);
+		}
+		return features;
+	}
+
+	@Test
+	/**
+	 * Test if a stored transition is read back as it was written
+	 */
+	public void testAddAndRead() {
+		ReplayBuffer buffer = new ReplayBuffer(4, 3);
+		assertTrue(buffer.add(features(0, 5), 2, -1, features(1, 3, 7), 4, 0.81));
+		assertTrue(buffer.add(features(2), 1, 1, null, -1, 0.9));
+
+		SparseFeatures out = new SparseFeatures();
+		buffer.readState(0, out);
+		assertEquals(2, out.size());
+		assertEquals(5, out.index(1));
+		assertEquals(5.5f, out.value(1), 0);
+
+		buffer.readNextState(0, out);
+		assertEquals(3, out.size());
+		assertEquals(7, out.index(2));
+
+		assertEquals(2, buffer.getAction(0));
+		assertEquals(4, buffer.getNextAction(0));
+		assertEquals(-1, buffer.getReward(0), 0);
+		assertEquals(0.81f, buffer.getDiscount(0), 0);
+		assertFalse(buffer.isTerminal(0));
+		assertTrue(buffer.isTerminal(1));
+	}
+
+	@Test
+	/**
+	 * Test if the oldest transitions are overwritten when the buffer is full
+	 * and if states with too many active features are rejected
+	 */
+	public void testOverwrite() {
+		ReplayBuffer buffer = new ReplayBuffer(2, 2);
+		buffer.add(features(0), 0, 0, null, -1, 1);
+		buffer.add(features(1), 1, 0, null, -1, 1);
+		buffer.add(features(2), 2, 0, null, -1, 1);
+
+		assertEquals(2, buffer.size());
+		assertEquals(2, buffer.getAction(0));
+		assertEquals(1, buffer.getAction(1));
+
+		assertFalse(buffer.add(features(0, 1, 2), 3, 0, null, -1, 1));
+		assertEquals(2, buffer.getAction(0));
+	}
+
+}
@@ -0,0 +1,53 @@
+package test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ai.mcts.naivemcts.NaiveMCTS;
+import players.RootParallel;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+public class TestRootParallel {
+
+	private void assertDistinctIDs(GameState state) {
+		Set<Long> ids = new HashSet<>();
+		for (Unit u : state.getUnits()) {
+			assertTrue("Repeated unit ID " + u.getID() + " at frame " + state.getTime(), ids.add(u.getID()));
+		}
+	}
+
+	@Test
+	/**
+	 * Test if two root-parallel players keep the unit IDs of the game distinct
+	 * on a map with production (the bases train workers, whose playouts produce
+	 * more units in the searches of both players)
+	 */
+	public void testTwoInstancesWithProduction() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED);
+		GameState state = new GameState(PhysicalGameState.load("maps/24x24/basesWorkers24x24.xml", types), types);
+
+		RootParallel player1 = new RootParallel(types, NaiveMCTS::new, 4, -1, 200);
+		RootParallel player2 = new RootParallel(types, NaiveMCTS::new, 4, -1, 200);
+
+		int initialUnits = state.getUnits().size();
+		boolean gameover = false;
+		while (!gameover && state.getTime() < 500) {
+			PlayerAction action1 = player1.getAction(0, state);
+			PlayerAction action2 = player2.getAction(1, state);
+			state.issueSafe(action1);
+			state.issueSafe(action2);
+			gameover = state.cycle();
+			assertDistinctIDs(state);
+		}
+		assertTrue("No unit was produced", state.getUnits().size() > initialUnits || gameover);
+	}
+
+}
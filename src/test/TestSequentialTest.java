@@ -0,0 +1,65 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import rl.Runner;
+import rl.SequentialTest;
+
+public class TestSequentialTest {
+
+	@Test
+	/**
+	 * Test if wins, draws and losses are tallied from the point of view of the player
+	 */
+	public void testScore() {
+		SequentialTest test = new SequentialTest(1, 0.05, 0, 1.96);
+		test.add(Runner.P2_WINS);
+		test.add(Runner.P2_WINS);
+		test.add(Runner.DRAW);
+		test.add(Runner.P1_WINS);
+		test.add(Runner.MATCH_ERROR);
+
+		assertEquals(4, test.getGames());
+		assertEquals(0.625, test.getScore(), 1e-9);
+	}
+
+	@Test
+	/**
+	 * Test if a one-sided result settles quickly, but never before the minimum number of games
+	 */
+	public void testSettlesOneSidedResult() {
+		SequentialTest test = new SequentialTest(1, 0.05, 30, 1.96);
+		for (int i = 0; i < 29; i++) {
+			test.add(Runner.P2_WINS);
+		}
+		assertFalse(test.isSettled());
+
+		int games = 29;
+		while (!test.isSettled()) {
+			test.add(Runner.P2_WINS);
+			games++;
+		}
+		assertEquals(35, games);
+
+		double[] interval = test.getInterval();
+		assertTrue(interval[0] > 0.9);
+		assertEquals(1, interval[1], 1e-9);
+	}
+
+	@Test
+	/**
+	 * Test if a balanced result requires many more games
+	 */
+	public void testBalancedResultNeedsMoreGames() {
+		SequentialTest test = new SequentialTest(1, 0.05, 30, 1.96);
+		for (int i = 0; i < 300; i++) {
+			test.add(i % 2 == 0 ? Runner.P1_WINS : Runner.P2_WINS);
+		}
+		assertFalse(test.isSettled());
+	}
+
+}
@@ -0,0 +1,80 @@
+package test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ai.abstraction.WorkerRush;
+import rl.DecisionClock;
+import rl.Runner;
+import rts.GameSettings;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+public class TestSkipIdleFrames {
+
+	private static final int INTERVAL = 7;
+
+	/**
+	 * Plays WorkerRush, deciding every INTERVAL frames, and records the frames
+	 * it was queried at
+	 */
+	private static class ClockedWorkerRush extends WorkerRush implements DecisionClock {
+		Set<Integer> queried = new HashSet<>();
+
+		ClockedWorkerRush(UnitTypeTable types) {
+			super(types);
+		}
+
+		@Override
+		public boolean decidesAt(GameState state, int player) {
+			return state.getTime() % INTERVAL == 0;
+		}
+
+		@Override
+		public PlayerAction getAction(int player, GameState state) {
+			queried.add(state.getTime());
+			return super.getAction(player, state);
+		}
+	}
+
+	private GameSettings settings() throws IOException {
+		Properties config = new Properties();
+		try (InputStream in = new FileInputStream("config/microrts.properties")) {
+			config.load(in);
+		}
+		config.setProperty("max_cycles", "600");
+		config.setProperty("partially_observable", "false");
+		return GameSettings.loadFromConfig(config);
+	}
+
+	@Test
+	/**
+	 * Test if skipping idle frames still queries the AIs at every frame where
+	 * a {@link DecisionClock} decides, while skipping others
+	 */
+	public void testDecisionFramesAreNotSkipped() throws Exception {
+		GameSettings settings = settings();
+		UnitTypeTable types = new UnitTypeTable(settings.getUTTVersion(), settings.getConflictPolicy());
+		ClockedWorkerRush clocked = new ClockedWorkerRush(types);
+
+		Runner.headlessMatch(clocked, new WorkerRush(types), settings, types, null, true, null);
+
+		int last = 0;
+		for (int time : clocked.queried) {
+			last = Math.max(last, time);
+		}
+		for (int time = 0; time <= last; time += INTERVAL) {
+			assertTrue("Decision frame " + time + " was skipped", clocked.queried.contains(time));
+		}
+		assertTrue("No frame was skipped", clocked.queried.size() < last + 1);
+	}
+}
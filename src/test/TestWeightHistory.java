@@ -0,0 +1,148 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rl.WeightHistory;
+import rl.WeightHistoryExport;
+
+public class TestWeightHistory {
+
+	private static final String[] ACTIONS = { "WorkerRush", "LightRush" };
+	private static final List<String> FEATURES = Arrays.asList("bias", "resources_own", "unit_count-q0-p0");
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("weights", ".history");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private float[][] weights(int game) {
+		float[][] weights = new float[ACTIONS.length][FEATURES.size()];
+		for (int a = 0; a < weights.length; a++) {
+			for (int f = 0; f < weights[a].length; f++) {
+				weights[a][f] = game + a * 0.25f + f * 0.5f;
+			}
+		}
+		return weights;
+	}
+
+	private void record(int first, int last) throws IOException {
+		try (WeightHistory history = WeightHistory.append(file.getPath(), ACTIONS, FEATURES)) {
+			for (int game = first; game <= last; game++) {
+				history.record(game, weights(game));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Test if the names and records are read back as they were written, also
+	 * after reopening the history to append
+	 */
+	public void testRoundTrip() throws IOException {
+		record(1, 2);
+		record(3, 3);
+
+		try (WeightHistory history = WeightHistory.read(file.getPath())) {
+			assertEquals(Arrays.asList(ACTIONS), history.getActionNames());
+			assertEquals(FEATURES, history.getFeatureNames());
+			assertEquals(3, history.size());
+
+			float[][] weights = new float[ACTIONS.length][FEATURES.size()];
+			for (int i = 0; i < 3; i++) {
+				assertEquals(i + 1, history.readRecord(i, weights));
+				for (int a = 0; a < ACTIONS.length; a++) {
+					assertEquals(Arrays.toString(weights(i + 1)[a]), Arrays.toString(weights[a]));
+				}
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Test if a partially written record at the end (e.g. from an interrupted
+	 * run) is discarded when the history is reopened
+	 */
+	public void testTornTail() throws IOException {
+		record(1, 2);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+
+		try (WeightHistory history = WeightHistory.read(file.getPath())) {
+			assertEquals(1, history.size());
+		}
+
+		record(2, 3);
+		try (WeightHistory history = WeightHistory.read(file.getPath())) {
+			assertEquals(3, history.size());
+			float[][] weights = new float[ACTIONS.length][FEATURES.size()];
+			assertEquals(2, history.readRecord(1, weights));
+			assertEquals(weights(2)[1][2], weights[1][2], 0);
+		}
+	}
+
+	@Test
+	/**
+	 * Test if the records after a game (played again after resuming) are
+	 * discarded
+	 */
+	public void testTruncateAfter() throws IOException {
+		record(1, 5);
+		assertEquals(2, WeightHistory.truncateAfter(file.getPath(), 3));
+		record(4, 4);
+
+		try (WeightHistory history = WeightHistory.read(file.getPath())) {
+			assertEquals(4, history.size());
+			float[][] weights = new float[ACTIONS.length][FEATURES.size()];
+			assertEquals(3, history.readRecord(2, weights));
+			assertEquals(4, history.readRecord(3, weights));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	/**
+	 * Test if appending with other features is refused
+	 */
+	public void testMismatchedNames() throws IOException {
+		record(1, 1);
+		WeightHistory.append(file.getPath(), ACTIONS, FEATURES.subList(0, 2)).close();
+	}
+
+	@Test
+	/**
+	 * Test if the export writes the requested slice of games and action
+	 */
+	public void testExportSlice() throws IOException {
+		record(1, 6);
+
+		StringWriter out = new StringWriter();
+		try (WeightHistory history = WeightHistory.read(file.getPath())) {
+			WeightHistoryExport.export(history, out, "LightRush", 2, 5, 2);
+		}
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("game,action,bias,resources_own,unit_count-q0-p0", lines[0]);
+		assertEquals("2,LightRush,2.25,2.75,3.25", lines[1]);
+		assertEquals("4,LightRush,4.25,4.75,5.25", lines[2]);
+	}
+}